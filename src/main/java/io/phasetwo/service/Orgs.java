@@ -8,5 +8,10 @@ public class Orgs {
   public static final String ORG_DEFAULT_POST_BROKER_FLOW_KEY =
       "_providerConfig.orgs.defaults.postBrokerFlow";
   public static final String ORG_DEFAULT_SYNC_MODE_KEY = "_providerConfig.orgs.defaults.syncMode";
+  public static final String ORG_AUTH_TOKEN_ROLES_KEY = "_providerConfig.orgs.auth.tokenRoles";
+  public static final String ORG_AUTH_TOKEN_ROLES_MAX_AGE_KEY =
+      "_providerConfig.orgs.auth.tokenRolesMaxAge";
+  public static final String ORG_AUTH_TOKEN_ROLES_CLIENTS_KEY =
+      "_providerConfig.orgs.auth.tokenRolesClients";
   public static final String ACTIVE_ORGANIZATION = "org.ro.active";
 }
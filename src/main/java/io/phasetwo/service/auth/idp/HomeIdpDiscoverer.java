@@ -1,6 +1,7 @@
 //package de.sventorben.keycloak.authentication.hidpd;
 package io.phasetwo.service.auth.idp;
 
+import io.phasetwo.service.model.OrganizationModel;
 import io.phasetwo.service.model.OrganizationProvider;
 import org.jboss.logging.Logger;
 import org.keycloak.authentication.AuthenticationFlowContext;
@@ -16,6 +17,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 final class HomeIdpDiscoverer {
 
@@ -95,45 +97,55 @@ final class HomeIdpDiscoverer {
                     Collectors.toMap(FederatedIdentityModel::getIdentityProvider, FederatedIdentityModel::getUserName));
         }
 
-        List<IdentityProviderModel> enabledIdps = determineEnabledIdps();
         // Original; lookup mechanism from https://github.com/sventorben/keycloak-home-idp-discovery
         /*
-        List<IdentityProviderModel> enabledIdpsWithMatchingDomain = filterIdpsWithMatchingDomainFrom(enabledIdps,
+        List<IdentityProviderModel> enabledIdpsWithMatchingDomain = filterIdpsWithMatchingDomainFrom(determineEnabledIdps(),
             domain,
             config);
         */
         // Overidden lookup mechanism to lookup via organization domain
         OrganizationProvider orgs = context.getSession().getProvider(OrganizationProvider.class);
+        Stream<OrganizationModel> matchingOrgs = config.matchSubdomains()
+            ? orgs.getOrganizationsStreamForDomainOrParent(
+                context.getRealm(), domain.toString(), config.requireVerifiedDomain())
+            : orgs.getOrganizationsStreamForDomain(
+                context.getRealm(), domain.toString(), config.requireVerifiedDomain());
         List<IdentityProviderModel> enabledIdpsWithMatchingDomain =
-            orgs.getOrganizationsStreamForDomain(
-                    context.getRealm(), domain.toString(), config.requireVerifiedDomain())
+            matchingOrgs
                 .flatMap(o -> o.getIdentityProvidersStream())
                 .filter(IdentityProviderModel::isEnabled)
                 .collect(Collectors.toList());
 
+        if (linkedIdps.isEmpty()) {
+            // General case if user logs in for the first time: not linked IdPs with matching domain
+            logFoundIdps("non-linked", "matching", enabledIdpsWithMatchingDomain, domain, username);
+            return enabledIdpsWithMatchingDomain;
+        }
+
         // Prefer linked IdP with matching domain first
         List<IdentityProviderModel> homeIdps = getLinkedIdpsFrom(enabledIdpsWithMatchingDomain, linkedIdps);
-
-        if (homeIdps.isEmpty()) {
-            if (!linkedIdps.isEmpty()) {
-                // Prefer linked and enabled IdPs without matching domain in favor of not linked IdPs with matching domain
-                homeIdps = getLinkedIdpsFrom(enabledIdps, linkedIdps);
-            }
-            if (homeIdps.isEmpty()) {
-                // Fallback to not linked IdPs with matching domain (general case if user logs in for the first time)
-                homeIdps = enabledIdpsWithMatchingDomain;
-                logFoundIdps("non-linked", "matching", homeIdps, domain, username);
-            } else {
-                logFoundIdps("non-linked", "non-matching", homeIdps, domain, username);
-            }
-        } else {
+        if (!homeIdps.isEmpty()) {
             logFoundIdps("linked", "matching", homeIdps, domain, username);
+            return homeIdps;
         }
 
-        return homeIdps;
+        // Prefer linked and enabled IdPs without matching domain in favor of not linked IdPs with matching domain.
+        // Only this branch needs the IdPs of the whole realm.
+        homeIdps = getLinkedIdpsFrom(determineEnabledIdps(), linkedIdps);
+        if (!homeIdps.isEmpty()) {
+            logFoundIdps("linked", "non-matching", homeIdps, domain, username);
+            return homeIdps;
+        }
+
+        // Fallback to not linked IdPs with matching domain
+        logFoundIdps("non-linked", "matching", enabledIdpsWithMatchingDomain, domain, username);
+        return enabledIdpsWithMatchingDomain;
     }
 
     private void logFoundIdps(String idpQualifier, String domainQualifier, List<IdentityProviderModel> homeIdps, Domain domain, String username) {
+        if (!LOG.isTraceEnabled()) {
+            return;
+        }
         String homeIdpsString = homeIdps.stream()
             .map(IdentityProviderModel::getAlias)
             .collect(Collectors.joining(","));
@@ -152,8 +164,10 @@ final class HomeIdpDiscoverer {
         List<IdentityProviderModel> idpsWithMatchingDomain = enabledIdps.stream()
             .filter(it -> new IdentityProviderModelConfig(it).supportsDomain(userAttributeName, domain))
             .collect(Collectors.toList());
-        LOG.tracef("IdPs with matching domain '%s' for attribute '%s': %s", domain, userAttributeName,
-            idpsWithMatchingDomain.stream().map(IdentityProviderModel::getAlias).collect(Collectors.joining(",")));
+        if (LOG.isTraceEnabled()) {
+            LOG.tracef("IdPs with matching domain '%s' for attribute '%s': %s", domain, userAttributeName,
+                idpsWithMatchingDomain.stream().map(IdentityProviderModel::getAlias).collect(Collectors.joining(",")));
+        }
         return idpsWithMatchingDomain;
     }
 
@@ -162,9 +176,11 @@ final class HomeIdpDiscoverer {
         List<IdentityProviderModel> enabledIdps = realm.getIdentityProvidersStream()
             .filter(IdentityProviderModel::isEnabled)
             .collect(Collectors.toList());
-        LOG.tracef("Enabled IdPs in realm '%s': %s",
-            realm.getName(),
-            enabledIdps.stream().map(IdentityProviderModel::getAlias).collect(Collectors.joining(",")));
+        if (LOG.isTraceEnabled()) {
+            LOG.tracef("Enabled IdPs in realm '%s': %s",
+                realm.getName(),
+                enabledIdps.stream().map(IdentityProviderModel::getAlias).collect(Collectors.joining(",")));
+        }
         return enabledIdps;
     }
 
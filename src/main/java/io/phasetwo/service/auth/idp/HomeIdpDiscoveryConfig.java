@@ -13,6 +13,7 @@ final class HomeIdpDiscoveryConfig {
     static final String BYPASS_LOGIN_PAGE = "bypassLoginPage";
     static final String USER_ATTRIBUTE = "userAttribute";
     static final String FORWARD_TO_FIRST_MATCH = "forwardToFirstMatch";
+    static final String MATCH_SUBDOMAINS = "matchSubdomains";
 
     private final AuthenticatorConfigModel authenticatorConfigModel;
 
@@ -59,4 +60,10 @@ final class HomeIdpDiscoveryConfig {
             .map(it -> Boolean.parseBoolean(it.getConfig().getOrDefault(FORWARD_TO_FIRST_MATCH, "true")))
             .orElse(true);
     }
+
+    boolean matchSubdomains() {
+        return Optional.ofNullable(authenticatorConfigModel)
+            .map(it -> Boolean.parseBoolean(it.getConfig().getOrDefault(MATCH_SUBDOMAINS, "false")))
+            .orElse(false);
+    }
 }
@@ -11,6 +11,7 @@ import static io.phasetwo.service.auth.idp.HomeIdpDiscoveryConfig.REQUIRE_VERIFI
 import static io.phasetwo.service.auth.idp.HomeIdpDiscoveryConfig.BYPASS_LOGIN_PAGE;
 import static io.phasetwo.service.auth.idp.HomeIdpDiscoveryConfig.FORWARD_TO_LINKED_IDP;
 import static io.phasetwo.service.auth.idp.HomeIdpDiscoveryConfig.FORWARD_TO_FIRST_MATCH;
+import static io.phasetwo.service.auth.idp.HomeIdpDiscoveryConfig.MATCH_SUBDOMAINS;
 import static io.phasetwo.service.auth.idp.HomeIdpDiscoveryConfig.USER_ATTRIBUTE;
 import static org.keycloak.provider.ProviderConfigProperty.BOOLEAN_TYPE;
 import static org.keycloak.provider.ProviderConfigProperty.STRING_TYPE;
@@ -59,6 +60,14 @@ final class HomeIdpDiscoveryConfigProperties {
         true,
         false);
 
+    private static final ProviderConfigProperty MATCH_SUBDOMAINS_PROPERTY = new ProviderConfigProperty(
+        MATCH_SUBDOMAINS,
+        "Match subdomains",
+        "Whether users at a subdomain of an organization's domain are forwarded to its IdPs, when no organization has the exact domain.",
+        BOOLEAN_TYPE,
+        false,
+        false);
+
     private static final ProviderConfigProperty USER_ATTRIBUTE_PROPERTY = new ProviderConfigProperty(
         USER_ATTRIBUTE,
         "User attribute",
@@ -71,6 +80,7 @@ final class HomeIdpDiscoveryConfigProperties {
         .property(USER_ATTRIBUTE_PROPERTY)
         .property(REQUIRE_VERIFIED_EMAIL_PROPERTY)
         .property(REQUIRE_VERIFIED_DOMAIN_PROPERTY)
+        .property(MATCH_SUBDOMAINS_PROPERTY)
         .property(BYPASS_LOGIN_PAGE_PROPERTY)
         .property(FORWARD_TO_LINKED_IDP_PROPERTY)
         .property(FORWARD_TO_FIRST_MATCH_PROPERTY)
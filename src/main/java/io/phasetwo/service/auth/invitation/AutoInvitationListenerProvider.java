@@ -24,12 +24,13 @@ public class AutoInvitationListenerProvider implements EventListenerProvider {
             UserProvider userProvider=  _session.getProvider(UserProvider.class);
             RealmModel realm = realmProvider.getRealm(event.getRealmId());
             UserModel user =  userProvider.getUserById(realm, event.getUserId());
-            log.infof(
+            log.debugf(
                     "Silent invitation add called for realm %s and user %s",
                     realm.getName(), user.getEmail());
 
 
             OrganizationProvider orgs = _session.getProvider(OrganizationProvider.class);
+            if (!orgs.hasUserInvitations(realm, user)) return;
             orgs.getUserInvitationsStream(realm, user)
                     .forEach(
                             i -> {
@@ -32,9 +32,10 @@ public class InvitationRequiredAction implements RequiredActionProvider {
         "InvitationRequiredAction.evaluateTriggers called for realm %s and user %s",
         realm.getName(), user.getEmail());
 
-    long cnt = getUserInvites(context, realm, user).count();
-    log.debugf("Found %d invites for %s", cnt, user.getEmail());
-    if (cnt > 0) {
+    OrganizationProvider orgs = context.getSession().getProvider(OrganizationProvider.class);
+    boolean invited = orgs.hasUserInvitations(realm, user);
+    log.debugf("Found invites for %s: %b", user.getEmail(), invited);
+    if (invited) {
       log.debugf("Adding InvitationRequiredActionFactory for %s", user.getEmail());
       user.addRequiredAction(InvitationRequiredActionFactory.PROVIDER_ID);
     }
@@ -9,4 +9,8 @@ public interface DomainModel {
   void setVerified(boolean verified);
 
   OrganizationModel getOrganization();
+
+  default String getOrganizationId() {
+    return getOrganization().getId();
+  }
 }
@@ -1,7 +1,14 @@
 package io.phasetwo.service.model;
 
 import com.google.common.collect.MoreCollectors;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.keycloak.models.IdentityProviderModel;
 import org.keycloak.models.KeycloakSession;
@@ -43,10 +50,75 @@ public interface OrganizationModel extends WithAttributes {
 
   boolean hasMembership(UserModel user);
 
+  /** The ids of the users who are members, in the order of the users. */
+  default Set<String> getMemberIds(Collection<UserModel> users) {
+    Set<String> members = new LinkedHashSet<>();
+    for (UserModel user : users) {
+      if (hasMembership(user)) members.add(user.getId());
+    }
+    return members;
+  }
+
   void grantMembership(UserModel user);
 
+  /**
+   * Grant membership to each of the users who isn't a member yet.
+   *
+   * @return The ids of the users who were granted membership
+   */
+  default Set<String> grantMemberships(Collection<UserModel> users) {
+    Set<String> granted = new LinkedHashSet<>();
+    for (UserModel user : users) {
+      if (!hasMembership(user)) {
+        grantMembership(user);
+        granted.add(user.getId());
+      }
+    }
+    return granted;
+  }
+
   void revokeMembership(UserModel user);
 
+  /**
+   * Revoke the membership, organization roles and invitations of each of the users who is a member.
+   *
+   * @return The ids of the users whose membership was revoked
+   */
+  default Set<String> revokeMemberships(Collection<UserModel> users) {
+    Set<String> revoked = new LinkedHashSet<>();
+    for (UserModel user : users) {
+      if (hasMembership(user)) {
+        revokeMembership(user);
+        revoked.add(user.getId());
+      }
+    }
+    return revoked;
+  }
+
+  /**
+   * Set the organization roles of each of the users who is a member to exactly the named roles,
+   * granting the missing ones and revoking the others. Names of roles that don't exist are ignored.
+   */
+  default RoleMappingChanges setMemberRoles(Map<UserModel, Set<String>> roles) {
+    RoleMappingChanges changes = new RoleMappingChanges();
+    List<OrganizationRoleModel> all = getRolesStream().collect(Collectors.toList());
+    roles.forEach(
+        (user, names) -> {
+          if (!hasMembership(user)) return;
+          for (OrganizationRoleModel role : all) {
+            boolean wanted = names.contains(role.getName());
+            if (wanted && !role.hasRole(user)) {
+              role.grantRole(user);
+              changes.granted(user.getId(), role.getName());
+            } else if (!wanted && role.hasRole(user)) {
+              role.revokeRole(user);
+              changes.revoked(user.getId(), role.getName());
+            }
+          }
+        });
+    return changes;
+  }
+
   Stream<InvitationModel> getInvitationsStream();
 
   default Stream<InvitationModel> getInvitationsByEmail(String email) {
@@ -61,6 +133,45 @@ public interface OrganizationModel extends WithAttributes {
 
   InvitationModel addInvitation(String email, UserModel inviter);
 
+  /** The lowercase emails among the emails that already have an invitation. */
+  default Set<String> getInvitedEmails(Collection<String> emails) {
+    Set<String> invited = new LinkedHashSet<>();
+    for (String email : emails) {
+      if (getInvitationsByEmail(email.toLowerCase()).findAny().isPresent()) {
+        invited.add(email.toLowerCase());
+      }
+    }
+    return invited;
+  }
+
+  /** The lowercase emails among the emails that belong to members. */
+  default Set<String> getMemberEmails(Collection<String> emails) {
+    Set<String> lower = emails.stream().map(String::toLowerCase).collect(Collectors.toSet());
+    return getMembersStream()
+        .map(UserModel::getEmail)
+        .filter(e -> e != null && lower.contains(e.toLowerCase()))
+        .map(String::toLowerCase)
+        .collect(Collectors.toCollection(LinkedHashSet::new));
+  }
+
+  /**
+   * Add an invitation for each email, by the inviter it maps to.
+   *
+   * @param setup Sets the other fields of each invitation, before it is written
+   * @return The invitations, in the order of the emails
+   */
+  default List<InvitationModel> addInvitations(
+      Map<String, UserModel> inviters, Consumer<InvitationModel> setup) {
+    List<InvitationModel> added = new ArrayList<>();
+    inviters.forEach(
+        (email, inviter) -> {
+          InvitationModel invitation = addInvitation(email, inviter);
+          setup.accept(invitation);
+          added.add(invitation);
+        });
+    return added;
+  }
+
   Stream<OrganizationRoleModel> getRolesStream();
 
   default OrganizationRoleModel getRoleByName(String name) {
@@ -87,4 +198,7 @@ public interface OrganizationModel extends WithAttributes {
   interface OrganizationCreationEvent extends OrganizationEvent {}
 
   interface OrganizationRemovedEvent extends OrganizationEvent {}
+
+  /** Sent when identity providers are added to, or removed from, the organization. */
+  interface OrganizationIdentityProvidersChangedEvent extends OrganizationEvent {}
 }
@@ -2,8 +2,10 @@ package io.phasetwo.service.model;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Stream;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserModel;
@@ -19,8 +21,32 @@ public interface OrganizationProvider extends Provider {
   Stream<OrganizationModel> getOrganizationsStreamForDomain(
       RealmModel realm, String domain, boolean verified);
 
+  /**
+   * Get the organizations that own the domain or, if none do, its nearest parent domain that is
+   * owned. For example, {@code eu.corp.example.com} matches an organization with {@code
+   * corp.example.com}. Parents above the registrable domain, such as {@code co.uk}, and top-level
+   * domains are never matched.
+   */
+  Stream<OrganizationModel> getOrganizationsStreamForDomainOrParent(
+      RealmModel realm, String domain, boolean verified);
+
+  /** Get the domains of all organizations in the realm. */
+  Stream<DomainModel> getDomainsStream(RealmModel realm);
+
   Stream<OrganizationModel> getUserOrganizationsStream(RealmModel realm, UserModel user);
 
+  /**
+   * Look up many users of the realm by id at once, for the bulk operations. Ids of users that don't
+   * exist are skipped.
+   */
+  Stream<UserModel> getUsersStream(RealmModel realm, List<String> ids);
+
+  /**
+   * Get the ids of the organizations the user is a member of, mapped to the names of the roles the
+   * user has been granted in each. Implementations should resolve this in a single query.
+   */
+  Map<String, Set<String>> getUserOrganizationRoles(RealmModel realm, UserModel user);
+
   Stream<OrganizationModel> searchForOrganizationStream(
       RealmModel realm,
       Map<String, String> attributes,
@@ -28,6 +54,24 @@ public interface OrganizationProvider extends Provider {
       Integer maxResults,
       Optional<UserModel> member);
 
+  /**
+   * Search like {@link #searchForOrganizationStream}, but continue after the organization with the
+   * given name and id instead of skipping an offset, so that every page costs the same however deep
+   * it is. Results are ordered by name, then id.
+   *
+   * @param afterName The name of the last organization of the previous page, or null for the first
+   *     page
+   * @param afterId The id of the last organization of the previous page, or null for the first
+   *     page
+   */
+  Stream<OrganizationModel> searchForOrganizationStreamAfter(
+      RealmModel realm,
+      Map<String, String> attributes,
+      String afterName,
+      String afterId,
+      Integer maxResults,
+      Optional<UserModel> member);
+
   Long getOrganizationsCount(RealmModel realm, String search);
 
   boolean removeOrganization(RealmModel realm, String id);
@@ -36,6 +80,12 @@ public interface OrganizationProvider extends Provider {
 
   Stream<InvitationModel> getUserInvitationsStream(RealmModel realm, UserModel user);
 
+  /** Whether there is a pending invitation for the user's email in any organization. */
+  boolean hasUserInvitations(RealmModel realm, UserModel user);
+
+  /** Get the distinct, lowercased emails of all pending invitations in the realm. */
+  Stream<String> getInvitationEmailsStream(RealmModel realm);
+
   // deprecated methods
 
   /**
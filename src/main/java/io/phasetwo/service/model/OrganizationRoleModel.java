@@ -1,5 +1,8 @@
 package io.phasetwo.service.model;
 
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.stream.Stream;
 import org.keycloak.models.UserModel;
 
@@ -19,7 +22,41 @@ public interface OrganizationRoleModel {
 
   void grantRole(UserModel user);
 
+  /**
+   * Grant the role to each of the users who doesn't have it yet. The users must be members of the
+   * organization, which the caller checks, for example with {@link
+   * OrganizationModel#getMemberIds(Collection)}.
+   *
+   * @return The ids of the users who were granted the role
+   */
+  default Set<String> grantRoleToUsers(Collection<UserModel> users) {
+    Set<String> granted = new LinkedHashSet<>();
+    for (UserModel user : users) {
+      if (!hasRole(user)) {
+        grantRole(user);
+        if (hasRole(user)) granted.add(user.getId());
+      }
+    }
+    return granted;
+  }
+
   void revokeRole(UserModel user);
 
+  /**
+   * Revoke the role from each of the users who has it.
+   *
+   * @return The ids of the users whose role was revoked
+   */
+  default Set<String> revokeRoleFromUsers(Collection<UserModel> users) {
+    Set<String> revoked = new LinkedHashSet<>();
+    for (UserModel user : users) {
+      if (hasRole(user)) {
+        revokeRole(user);
+        revoked.add(user.getId());
+      }
+    }
+    return revoked;
+  }
+
   boolean hasRole(UserModel user);
 }
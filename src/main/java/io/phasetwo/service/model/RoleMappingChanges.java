@@ -0,0 +1,29 @@
+package io.phasetwo.service.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/** The organization roles granted and revoked when setting the roles of members, by user id. */
+public class RoleMappingChanges {
+
+  private final Map<String, Set<String>> granted = new LinkedHashMap<>();
+  private final Map<String, Set<String>> revoked = new LinkedHashMap<>();
+
+  public void granted(String userId, String role) {
+    granted.computeIfAbsent(userId, k -> new TreeSet<>()).add(role);
+  }
+
+  public void revoked(String userId, String role) {
+    revoked.computeIfAbsent(userId, k -> new TreeSet<>()).add(role);
+  }
+
+  public Map<String, Set<String>> getGranted() {
+    return granted;
+  }
+
+  public Map<String, Set<String>> getRevoked() {
+    return revoked;
+  }
+}
@@ -0,0 +1,37 @@
+package io.phasetwo.service.model.infinispan;
+
+import com.google.common.collect.ImmutableList;
+import java.util.Collection;
+import java.util.List;
+
+/** Ids of the organizations in a realm that have a domain, and of those that have verified it. */
+public class CachedDomain {
+
+  private final String realmId;
+  private final String domain;
+  private final List<String> organizationIds;
+  private final List<String> verifiedOrganizationIds;
+
+  public CachedDomain(
+      String realmId,
+      String domain,
+      Collection<String> organizationIds,
+      Collection<String> verifiedOrganizationIds) {
+    this.realmId = realmId;
+    this.domain = domain;
+    this.organizationIds = ImmutableList.copyOf(organizationIds);
+    this.verifiedOrganizationIds = ImmutableList.copyOf(verifiedOrganizationIds);
+  }
+
+  public String getRealmId() {
+    return realmId;
+  }
+
+  public String getDomain() {
+    return domain;
+  }
+
+  public List<String> getOrganizationIds(boolean verified) {
+    return verified ? verifiedOrganizationIds : organizationIds;
+  }
+}
@@ -0,0 +1,71 @@
+package io.phasetwo.service.model.infinispan;
+
+import static io.phasetwo.service.Orgs.ORG_OWNER_CONFIG_KEY;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.keycloak.models.IdentityProviderModel;
+import org.keycloak.models.RealmModel;
+
+/**
+ * Index of the identity providers in a realm that are owned by an organization, by organization
+ * id. Built with a single pass over the realm's identity providers. Updates and removals of
+ * identity providers invalidate it, but Keycloak doesn't send an event when one is created, so the
+ * index also keeps the number of identity providers the realm had, as a stamp to tell when one was
+ * added.
+ */
+public class CachedIdentityProviders {
+
+  private final String realmId;
+  private final Map<String, List<IdentityProviderModel>> providers;
+  private final long identityProviderCount;
+
+  public CachedIdentityProviders(RealmModel realm) {
+    this.realmId = realm.getId();
+    Map<String, List<IdentityProviderModel>> owned = new HashMap<>();
+    long[] count = {0};
+    realm
+        .getIdentityProvidersStream()
+        .forEach(
+            i -> {
+              count[0]++;
+              Map<String, String> config = i.getConfig();
+              String orgId = config == null ? null : config.get(ORG_OWNER_CONFIG_KEY);
+              if (orgId != null) {
+                owned
+                    .computeIfAbsent(orgId, k -> new ArrayList<>())
+                    .add(new IdentityProviderModel(i));
+              }
+            });
+    ImmutableMap.Builder<String, List<IdentityProviderModel>> b = ImmutableMap.builder();
+    owned.forEach((k, v) -> b.put(k, ImmutableList.copyOf(v)));
+    this.providers = b.build();
+    this.identityProviderCount = count[0];
+  }
+
+  /**
+   * The realm's identity providers are a sized stream, so counting them doesn't visit or copy any
+   * of them.
+   *
+   * @param realm The realm the index was built for
+   * @return true if no identity provider was added to the realm since the index was built
+   */
+  public boolean isCurrent(RealmModel realm) {
+    return realm.getIdentityProvidersStream().count() == identityProviderCount;
+  }
+
+  public String getRealmId() {
+    return realmId;
+  }
+
+  /** Copies of the identity providers owned by the organization, which callers may modify. */
+  public Stream<IdentityProviderModel> getIdentityProvidersStream(String orgId) {
+    return providers.getOrDefault(orgId, ImmutableList.of()).stream()
+        .map(IdentityProviderModel::new);
+  }
+}
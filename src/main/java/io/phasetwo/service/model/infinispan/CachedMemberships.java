@@ -0,0 +1,43 @@
+package io.phasetwo.service.model.infinispan;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/** Immutable snapshot of the organizations a user is a member of, and their roles in each. */
+public class CachedMemberships {
+
+  private final String userId;
+  private final Map<String, Set<String>> roles;
+
+  public CachedMemberships(String userId, Map<String, ? extends Collection<String>> roles) {
+    this.userId = userId;
+    ImmutableMap.Builder<String, Set<String>> b = ImmutableMap.builder();
+    roles.forEach((k, v) -> b.put(k, ImmutableSet.copyOf(v)));
+    this.roles = b.build();
+  }
+
+  public String getUserId() {
+    return userId;
+  }
+
+  /** Organization ids mapped to the names of the roles the user has been granted. */
+  public Map<String, Set<String>> getRoles() {
+    return roles;
+  }
+
+  public boolean isMember(String orgId) {
+    return roles.containsKey(orgId);
+  }
+
+  public boolean hasRole(String orgId, String roleName) {
+    Set<String> r = roles.get(orgId);
+    return r != null && r.contains(roleName);
+  }
+
+  boolean containsAny(Collection<String> orgIds) {
+    return orgIds.stream().anyMatch(roles::containsKey);
+  }
+}
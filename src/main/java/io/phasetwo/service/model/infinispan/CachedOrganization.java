@@ -0,0 +1,113 @@
+package io.phasetwo.service.model.infinispan;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.phasetwo.service.model.OrganizationModel;
+import io.phasetwo.service.model.OrganizationRoleModel;
+import io.phasetwo.service.model.jpa.entity.OrganizationEntity;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.jpa.JpaModel;
+
+/** Immutable snapshot of an organization, its domains, attributes and roles. */
+public class CachedOrganization {
+
+  private final String id;
+  private final String realmId;
+  private final String name;
+  private final String displayName;
+  private final String url;
+  private final String createdBy;
+  private final Set<String> domains;
+  private final Map<String, List<String>> attributes;
+  private final Map<String, CachedOrganizationRole> roles;
+
+  @SuppressWarnings("unchecked")
+  public CachedOrganization(String realmId, OrganizationModel model) {
+    this.id = model.getId();
+    this.realmId = realmId;
+    this.name = model.getName();
+    this.displayName = model.getDisplayName();
+    this.url = model.getUrl();
+    if (model instanceof JpaModel) {
+      // avoid a user lookup just to find the id
+      this.createdBy = ((JpaModel<OrganizationEntity>) model).getEntity().getCreatedBy();
+    } else {
+      UserModel user = model.getCreatedBy();
+      this.createdBy = user == null ? null : user.getId();
+    }
+    this.domains = ImmutableSet.copyOf(model.getDomains());
+    ImmutableMap.Builder<String, List<String>> attrs = ImmutableMap.builder();
+    model.getAttributes().forEach((k, v) -> attrs.put(k, ImmutableList.copyOf(v)));
+    this.attributes = attrs.build();
+    ImmutableMap.Builder<String, CachedOrganizationRole> r = ImmutableMap.builder();
+    model
+        .getRolesStream()
+        .forEach(role -> r.put(role.getName(), new CachedOrganizationRole(role)));
+    this.roles = r.buildKeepingLast();
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getRealmId() {
+    return realmId;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getDisplayName() {
+    return displayName;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public String getCreatedBy() {
+    return createdBy;
+  }
+
+  public Set<String> getDomains() {
+    return domains;
+  }
+
+  public Map<String, List<String>> getAttributes() {
+    return attributes;
+  }
+
+  public Map<String, CachedOrganizationRole> getRoles() {
+    return roles;
+  }
+
+  public static class CachedOrganizationRole {
+
+    private final String id;
+    private final String name;
+    private final String description;
+
+    public CachedOrganizationRole(OrganizationRoleModel model) {
+      this.id = model.getId();
+      this.name = model.getName();
+      this.description = model.getDescription();
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+  }
+}
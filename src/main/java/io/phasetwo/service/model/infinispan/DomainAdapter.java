@@ -0,0 +1,48 @@
+package io.phasetwo.service.model.infinispan;
+
+import io.phasetwo.service.model.DomainModel;
+import io.phasetwo.service.model.OrganizationModel;
+import org.keycloak.models.RealmModel;
+
+/** Domain that invalidates the cached domain lookups when its verification changes. */
+public class DomainAdapter implements DomainModel {
+
+  protected final InfinispanOrganizationProvider orgCache;
+  protected final RealmModel realm;
+  protected final DomainModel delegate;
+
+  public DomainAdapter(
+      InfinispanOrganizationProvider orgCache, RealmModel realm, DomainModel delegate) {
+    this.orgCache = orgCache;
+    this.realm = realm;
+    this.delegate = delegate;
+  }
+
+  @Override
+  public String getDomain() {
+    return delegate.getDomain();
+  }
+
+  @Override
+  public boolean isVerified() {
+    return delegate.isVerified();
+  }
+
+  @Override
+  public void setVerified(boolean verified) {
+    if (verified != isVerified()) {
+      orgCache.registerDomainInvalidation(realm.getId(), getDomain());
+    }
+    delegate.setVerified(verified);
+  }
+
+  @Override
+  public String getOrganizationId() {
+    return delegate.getOrganizationId();
+  }
+
+  @Override
+  public OrganizationModel getOrganization() {
+    return orgCache.getOrganizationById(realm, getOrganizationId());
+  }
+}
@@ -0,0 +1,86 @@
+package io.phasetwo.service.model.infinispan;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import io.phasetwo.service.util.Domains;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Organization domains of a realm, indexed by their labels in reverse ({@code com -> example ->
+ * corp}), so the nearest owned parent of a domain is found in a single walk over its labels. It is
+ * fully built before it is cached and isn't modified afterwards.
+ */
+public class DomainTrie {
+
+  private static final Splitter LABELS = Splitter.on('.').omitEmptyStrings();
+
+  private static class Node {
+    private final Map<String, Node> children = new HashMap<>();
+    // organization id -> verified
+    private final Map<String, Boolean> owners = new LinkedHashMap<>();
+  }
+
+  private final Node root = new Node();
+
+  public void add(String domain, String orgId, boolean verified) {
+    Node node = root;
+    for (String label : reversedLabels(domain)) {
+      node = node.children.computeIfAbsent(label, k -> new Node());
+    }
+    node.owners.put(orgId, verified);
+  }
+
+  /**
+   * @param domain The domain
+   * @return true if any organization has exactly the domain
+   */
+  public boolean contains(String domain) {
+    Node node = root;
+    for (String label : reversedLabels(domain)) {
+      node = node.children.get(label);
+      if (node == null) return false;
+    }
+    return !node.owners.isEmpty();
+  }
+
+  /**
+   * @param domain The domain to match
+   * @param verified Only match domains the organization has verified
+   * @return The ids of the organizations that own the domain, or else its nearest parent domain
+   *     that is owned by any, up to its registrable domain, as in {@link
+   *     Domains#getDomainAndParents(String)}
+   */
+  public List<String> getNearestOrganizationIds(String domain, boolean verified) {
+    List<String> names = Domains.getDomainAndParents(domain);
+    if (names.isEmpty()) return ImmutableList.of();
+    int shortest = LABELS.splitToList(names.get(names.size() - 1)).size();
+    List<String> labels = reversedLabels(domain);
+    List<String> nearest = ImmutableList.of();
+    Node node = root;
+    for (int i = 0; i < labels.size(); i++) {
+      node = node.children.get(labels.get(i));
+      if (node == null) break;
+      if (i + 1 < shortest) continue;
+      List<String> ids = getOwners(node, verified);
+      if (!ids.isEmpty()) nearest = ids;
+    }
+    return nearest;
+  }
+
+  private static List<String> getOwners(Node node, boolean verified) {
+    ImmutableList.Builder<String> ids = ImmutableList.builder();
+    node.owners.forEach(
+        (id, v) -> {
+          if (v || !verified) ids.add(id);
+        });
+    return ids.build();
+  }
+
+  private static List<String> reversedLabels(String domain) {
+    return Lists.reverse(LABELS.splitToList(domain));
+  }
+}
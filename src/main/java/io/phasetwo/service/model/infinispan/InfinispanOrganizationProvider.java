@@ -0,0 +1,439 @@
+package io.phasetwo.service.model.infinispan;
+
+import io.phasetwo.service.model.DomainModel;
+import io.phasetwo.service.model.InvitationModel;
+import io.phasetwo.service.model.OrganizationModel;
+import io.phasetwo.service.model.OrganizationProvider;
+import io.phasetwo.service.model.jpa.JpaOrganizationProviderFactory;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.jbosslog.JBossLog;
+import org.keycloak.cluster.ClusterProvider;
+import org.keycloak.models.AbstractKeycloakTransaction;
+import org.keycloak.models.IdentityProviderModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakTransaction;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+
+/**
+ * Read-through cache over the JPA provider. Organizations (with their domains, attributes and
+ * roles) and per-user memberships are cached. Writes go through the JPA delegate and register
+ * invalidations, which are applied locally and sent to the rest of the cluster once the
+ * transaction completes. Anything invalidated in the current transaction is read from the
+ * database until then.
+ */
+@JBossLog
+public class InfinispanOrganizationProvider implements OrganizationProvider {
+
+  protected final KeycloakSession session;
+  protected final OrganizationCacheManager cache;
+  protected final long startupRevision;
+  protected final Set<String> invalidations = new HashSet<>();
+  protected final Set<String> organizationInvalidations = new HashSet<>();
+  protected final Map<String, OrganizationAdapter> managedOrganizations = new HashMap<>();
+  protected final Map<String, Set<String>> invitations = new HashMap<>();
+  protected final Map<String, CachedIdentityProviders> identityProviders = new HashMap<>();
+  protected OrganizationProvider delegate;
+
+  public InfinispanOrganizationProvider(KeycloakSession session, OrganizationCacheManager cache) {
+    this.session = session;
+    this.cache = cache;
+    this.startupRevision = cache.getCurrentRevision();
+    session.getTransactionManager().enlistAfterCompletion(getAfterTransaction());
+  }
+
+  public OrganizationProvider getDelegate() {
+    if (delegate == null) {
+      delegate =
+          session.getProvider(
+              OrganizationProvider.class, JpaOrganizationProviderFactory.PROVIDER_ID);
+    }
+    return delegate;
+  }
+
+  static String membershipsKey(String userId) {
+    return userId + ".memberships";
+  }
+
+  static String identityProvidersKey(String realmId) {
+    return realmId + ".idps";
+  }
+
+  static String domainKey(String realmId, String domain) {
+    return realmId + ".domain." + normalizeDomain(domain);
+  }
+
+  static String domainsKey(String realmId) {
+    return realmId + ".domains";
+  }
+
+  static String normalizeDomain(String domain) {
+    String d = domain.trim().toLowerCase(Locale.ROOT);
+    return d.endsWith(".") ? d.substring(0, d.length() - 1) : d;
+  }
+
+  public void registerOrganizationInvalidation(String id) {
+    invalidations.add(id);
+  }
+
+  /** Invalidate the cached memberships of every user who belongs to this organization. */
+  public void registerOrganizationMembershipsInvalidation(String id) {
+    organizationInvalidations.add(id);
+  }
+
+  public void registerMembershipsInvalidation(String userId) {
+    invalidations.add(membershipsKey(userId));
+  }
+
+  /** Invalidate the index of organization-owned identity providers in the realm. */
+  public void registerIdentityProvidersInvalidation(String realmId) {
+    invalidations.add(identityProvidersKey(realmId));
+  }
+
+  public void registerDomainInvalidation(String realmId, String domain) {
+    invalidations.add(domainKey(realmId, domain));
+    invalidations.add(domainsKey(realmId));
+  }
+
+  /**
+   * Add the email of a new invitation to the realm's invitation filter. It is added right away, so
+   * this node never misses it once it is committed, and again to every node once the transaction
+   * completes, in case the filter was rebuilt meanwhile.
+   */
+  public void registerInvitation(String realmId, String email) {
+    registerInvitations(realmId, Set.of(email));
+  }
+
+  public void registerInvitations(String realmId, Collection<String> emails) {
+    invitations.computeIfAbsent(realmId, k -> new HashSet<>()).addAll(emails);
+    cache.addInvitations(Map.of(realmId, emails));
+  }
+
+  protected boolean isInvalid(String key) {
+    return invalidations.contains(key);
+  }
+
+  @Override
+  public OrganizationModel createOrganization(
+      RealmModel realm, String name, UserModel createdBy, boolean admin) {
+    registerMembershipsInvalidation(createdBy.getId());
+    OrganizationModel org = getDelegate().createOrganization(realm, name, createdBy, admin);
+    registerOrganizationInvalidation(org.getId());
+    OrganizationAdapter adapter = new OrganizationAdapter(session, realm, this, null, org);
+    managedOrganizations.put(org.getId(), adapter);
+    return adapter;
+  }
+
+  @Override
+  public OrganizationModel getOrganizationById(RealmModel realm, String id) {
+    if (id == null) return null;
+    OrganizationAdapter managed = managedOrganizations.get(id);
+    if (managed != null) {
+      return realm.getId().equals(managed.getRealmId()) ? managed : null;
+    }
+    if (isInvalid(id)) {
+      OrganizationModel model = getDelegate().getOrganizationById(realm, id);
+      if (model == null) return null;
+      return manage(new OrganizationAdapter(session, realm, this, null, model));
+    }
+    CachedOrganization cached = cache.get(id, CachedOrganization.class);
+    if (cached == null) {
+      OrganizationModel model = getDelegate().getOrganizationById(realm, id);
+      if (model == null) return null;
+      return adapt(realm, model);
+    }
+    if (!realm.getId().equals(cached.getRealmId())) return null;
+    return manage(new OrganizationAdapter(session, realm, this, cached, null));
+  }
+
+  /** Wrap an organization loaded by the delegate, caching it if it isn't already. */
+  protected OrganizationModel adapt(RealmModel realm, OrganizationModel model) {
+    String id = model.getId();
+    OrganizationAdapter managed = managedOrganizations.get(id);
+    if (managed != null) return managed;
+    if (isInvalid(id)) {
+      return manage(new OrganizationAdapter(session, realm, this, null, model));
+    }
+    CachedOrganization cached = cache.get(id, CachedOrganization.class);
+    if (cached == null) {
+      cached = new CachedOrganization(realm.getId(), model);
+      cache.addRevisioned(id, cached, startupRevision);
+    }
+    OrganizationAdapter adapter = new OrganizationAdapter(session, realm, this, cached, null);
+    adapter.delegate = model;
+    return manage(adapter);
+  }
+
+  private OrganizationAdapter manage(OrganizationAdapter adapter) {
+    managedOrganizations.put(adapter.getId(), adapter);
+    return adapter;
+  }
+
+  /** Get the cached memberships for the user, or load them if they aren't cached. */
+  public CachedMemberships getMemberships(RealmModel realm, UserModel user) {
+    String key = membershipsKey(user.getId());
+    if (isInvalid(key) || !organizationInvalidations.isEmpty()) {
+      return loadMemberships(realm, user);
+    }
+    CachedMemberships cached = cache.get(key, CachedMemberships.class);
+    if (cached == null) {
+      cached = loadMemberships(realm, user);
+      cache.addRevisioned(
+          key, cached, startupRevision, OrganizationCacheManager.ORGANIZATION_MEMBERSHIPS);
+    }
+    return cached;
+  }
+
+  protected CachedMemberships loadMemberships(RealmModel realm, UserModel user) {
+    return new CachedMemberships(user.getId(), getDelegate().getUserOrganizationRoles(realm, user));
+  }
+
+  /** Get the identity providers owned by the organization from the realm's cached index. */
+  public Stream<IdentityProviderModel> getIdentityProvidersStream(RealmModel realm, String orgId) {
+    String key = identityProvidersKey(realm.getId());
+    if (isInvalid(key)) {
+      return new CachedIdentityProviders(realm).getIdentityProvidersStream(orgId);
+    }
+    // identity providers created outside of the organization endpoints send no event, so the
+    // index's count of identity providers is compared with the realm's once per session
+    CachedIdentityProviders cached =
+        identityProviders.computeIfAbsent(
+            key,
+            k -> {
+              CachedIdentityProviders c = cache.get(k, CachedIdentityProviders.class);
+              if (c == null || !c.isCurrent(realm)) {
+                c = new CachedIdentityProviders(realm);
+                cache.addRevisioned(k, c, startupRevision);
+              }
+              return c;
+            });
+    return cached.getIdentityProvidersStream(orgId);
+  }
+
+  @Override
+  public Stream<OrganizationModel> getOrganizationsStreamForDomain(
+      RealmModel realm, String domain, boolean verified) {
+    String key = domainKey(realm.getId(), domain);
+    if (isInvalid(key)) {
+      return getDelegate()
+          .getOrganizationsStreamForDomain(realm, domain, verified)
+          .map(o -> adapt(realm, o));
+    }
+    CachedDomain cached = cache.get(key, CachedDomain.class);
+    if (cached == null) {
+      // most lookups are for domains no organization has. they are answered from the realm's
+      // domain index rather than cached one by one, so they can't evict the owned domains
+      DomainTrie domains = getDomainTrie(realm);
+      if (domains != null && !domains.contains(normalizeDomain(domain))) return Stream.empty();
+      cached = loadDomain(realm, domain);
+      if (cached.getOrganizationIds(false).isEmpty()) return Stream.empty();
+      cache.addRevisioned(key, cached, startupRevision);
+    }
+    return cached.getOrganizationIds(verified).stream()
+        .map(id -> getOrganizationById(realm, id))
+        .filter(Objects::nonNull);
+  }
+
+  protected CachedDomain loadDomain(RealmModel realm, String domain) {
+    List<String> ids = getDomainOrganizationIds(realm, domain, false);
+    List<String> verified = ids.isEmpty() ? ids : getDomainOrganizationIds(realm, domain, true);
+    return new CachedDomain(realm.getId(), normalizeDomain(domain), ids, verified);
+  }
+
+  private List<String> getDomainOrganizationIds(RealmModel realm, String domain, boolean verified) {
+    return getDelegate()
+        .getOrganizationsStreamForDomain(realm, domain, verified)
+        .map(o -> adapt(realm, o).getId())
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public Stream<OrganizationModel> getOrganizationsStreamForDomainOrParent(
+      RealmModel realm, String domain, boolean verified) {
+    DomainTrie domains = getDomainTrie(realm);
+    if (domains == null) {
+      return getDelegate()
+          .getOrganizationsStreamForDomainOrParent(realm, domain, verified)
+          .map(o -> adapt(realm, o));
+    }
+    return domains.getNearestOrganizationIds(normalizeDomain(domain), verified).stream()
+        .map(id -> getOrganizationById(realm, id))
+        .filter(Objects::nonNull);
+  }
+
+  /** The realm's cached domain index, or null if its domains changed in this session. */
+  private DomainTrie getDomainTrie(RealmModel realm) {
+    String key = domainsKey(realm.getId());
+    if (isInvalid(key)) return null;
+    DomainTrie cached = cache.get(key, DomainTrie.class);
+    if (cached == null) {
+      cached = new DomainTrie();
+      for (DomainModel d : getDelegate().getDomainsStream(realm).collect(Collectors.toList())) {
+        cached.add(normalizeDomain(d.getDomain()), d.getOrganizationId(), d.isVerified());
+      }
+      cache.addRevisioned(key, cached, startupRevision);
+    }
+    return cached;
+  }
+
+  @Override
+  public Stream<DomainModel> getDomainsStream(RealmModel realm) {
+    return getDelegate().getDomainsStream(realm).map(d -> new DomainAdapter(this, realm, d));
+  }
+
+  @Override
+  public Stream<OrganizationModel> getUserOrganizationsStream(RealmModel realm, UserModel user) {
+    return getMemberships(realm, user).getRoles().keySet().stream()
+        .map(id -> getOrganizationById(realm, id))
+        .filter(Objects::nonNull);
+  }
+
+  @Override
+  public Map<String, Set<String>> getUserOrganizationRoles(RealmModel realm, UserModel user) {
+    return getMemberships(realm, user).getRoles();
+  }
+
+  @Override
+  public Stream<OrganizationModel> searchForOrganizationStream(
+      RealmModel realm,
+      Map<String, String> attributes,
+      Integer firstResult,
+      Integer maxResults,
+      Optional<UserModel> member) {
+    return getDelegate()
+        .searchForOrganizationStream(realm, attributes, firstResult, maxResults, member)
+        .map(o -> adapt(realm, o));
+  }
+
+  @Override
+  public Stream<OrganizationModel> searchForOrganizationStreamAfter(
+      RealmModel realm,
+      Map<String, String> attributes,
+      String afterName,
+      String afterId,
+      Integer maxResults,
+      Optional<UserModel> member) {
+    return getDelegate()
+        .searchForOrganizationStreamAfter(
+            realm, attributes, afterName, afterId, maxResults, member)
+        .map(o -> adapt(realm, o));
+  }
+
+  @Override
+  public Long getOrganizationsCount(RealmModel realm, String search) {
+    return getDelegate().getOrganizationsCount(realm, search);
+  }
+
+  @Override
+  public boolean removeOrganization(RealmModel realm, String id) {
+    OrganizationModel org = getOrganizationById(realm, id);
+    if (org != null) {
+      org.getDomains().forEach(d -> registerDomainInvalidation(realm.getId(), d));
+    }
+    registerOrganizationInvalidation(id);
+    registerOrganizationMembershipsInvalidation(id);
+    managedOrganizations.remove(id);
+    return getDelegate().removeOrganization(realm, id);
+  }
+
+  @Override
+  public void removeOrganizations(RealmModel realm) {
+    List<String> ids =
+        getDelegate()
+            .searchForOrganizationStream(realm, null, null, null, Optional.empty())
+            .map(OrganizationModel::getId)
+            .collect(Collectors.toList());
+    ids.forEach(id -> removeOrganization(realm, id));
+  }
+
+  @Override
+  public Stream<InvitationModel> getUserInvitationsStream(RealmModel realm, UserModel user) {
+    if (!mightHaveInvitations(realm, user)) return Stream.empty();
+    return getDelegate().getUserInvitationsStream(realm, user);
+  }
+
+  @Override
+  public Stream<UserModel> getUsersStream(RealmModel realm, List<String> ids) {
+    return getDelegate().getUsersStream(realm, ids);
+  }
+
+  @Override
+  public boolean hasUserInvitations(RealmModel realm, UserModel user) {
+    return mightHaveInvitations(realm, user) && getDelegate().hasUserInvitations(realm, user);
+  }
+
+  @Override
+  public Stream<String> getInvitationEmailsStream(RealmModel realm) {
+    return getDelegate().getInvitationEmailsStream(realm);
+  }
+
+  /**
+   * Check the realm's invitation filter for the user's email, building it with a single query if
+   * it's missing or stale. False if the user certainly has no pending invitation.
+   */
+  protected boolean mightHaveInvitations(RealmModel realm, UserModel user) {
+    if (user.getEmail() == null) return false;
+    InvitationFilter filter = cache.getInvitationFilter(realm.getId());
+    if (filter == null) {
+      long revision = cache.getInvitationRevision();
+      boolean put = false;
+      try {
+        filter =
+            new InvitationFilter(
+                getDelegate().getInvitationEmailsStream(realm).collect(Collectors.toList()));
+        put = cache.putInvitationFilter(realm.getId(), filter, revision);
+      } finally {
+        if (!put) cache.releaseInvitationFilterRebuild(realm.getId());
+      }
+      if (!put) return true;
+    }
+    return filter.mightHaveInvitation(user.getEmail());
+  }
+
+  @Override
+  public void close() {}
+
+  private KeycloakTransaction getAfterTransaction() {
+    return new AbstractKeycloakTransaction() {
+      @Override
+      protected void commitImpl() {
+        runInvalidations();
+      }
+
+      @Override
+      protected void rollbackImpl() {
+        runInvalidations();
+      }
+    };
+  }
+
+  protected void runInvalidations() {
+    if (invalidations.isEmpty() && organizationInvalidations.isEmpty() && invitations.isEmpty()) {
+      return;
+    }
+    if (!invalidations.isEmpty() || !organizationInvalidations.isEmpty()) {
+      cache.invalidate(invalidations, organizationInvalidations);
+    }
+    cache.addInvitations(invitations);
+    OrganizationInvalidationEvent event =
+        new OrganizationInvalidationEvent(invalidations, organizationInvalidations, invitations);
+    log.tracef("Sending %s", event);
+    session
+        .getProvider(ClusterProvider.class)
+        .notify(
+            InfinispanOrganizationProviderFactory.ORGANIZATION_INVALIDATION_EVENTS,
+            event,
+            true,
+            ClusterProvider.DCNotify.ALL_DCS);
+  }
+}
@@ -0,0 +1,124 @@
+package io.phasetwo.service.model.infinispan;
+
+import com.google.auto.service.AutoService;
+import io.phasetwo.service.model.OrganizationModel;
+import io.phasetwo.service.model.OrganizationProvider;
+import io.phasetwo.service.model.OrganizationProviderFactory;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.jbosslog.JBossLog;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.keycloak.Config.Scope;
+import org.keycloak.cluster.ClusterProvider;
+import org.keycloak.connections.infinispan.InfinispanConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.provider.ProviderEvent;
+
+/**
+ * Caching organization provider that wraps the JPA provider, in the same way the Keycloak realm
+ * cache works. It is the default provider. To disable caching, start Keycloak with {@code
+ * --spi-organization-provider-provider=jpa-organization}.
+ */
+@JBossLog
+@AutoService(OrganizationProviderFactory.class)
+public class InfinispanOrganizationProviderFactory implements OrganizationProviderFactory {
+
+  public static final String PROVIDER_ID = "infinispan-organization";
+  public static final String ORGANIZATION_CACHE_NAME = "orgs";
+  public static final String ORGANIZATION_INVALIDATION_EVENTS = "ORGANIZATION_INVALIDATION_EVENTS";
+
+  private volatile OrganizationCacheManager cacheManager;
+  private long maxEntries;
+  private long lifespan;
+  private long invitationFilterMaxAge;
+
+  @Override
+  public String getId() {
+    return PROVIDER_ID;
+  }
+
+  @Override
+  public OrganizationProvider create(KeycloakSession session) {
+    lazyInit(session);
+    return new InfinispanOrganizationProvider(session, cacheManager);
+  }
+
+  private void lazyInit(KeycloakSession session) {
+    if (cacheManager == null) {
+      synchronized (this) {
+        if (cacheManager == null) {
+          EmbeddedCacheManager manager =
+              session
+                  .getProvider(InfinispanConnectionProvider.class)
+                  .getCache(InfinispanConnectionProvider.REALM_CACHE_NAME)
+                  .getCacheManager();
+          if (manager.getCacheConfiguration(ORGANIZATION_CACHE_NAME) == null) {
+            log.debugf(
+                "Defining local cache %s with maxEntries=%d lifespan=%ds",
+                ORGANIZATION_CACHE_NAME, maxEntries, lifespan);
+            manager.defineConfiguration(
+                ORGANIZATION_CACHE_NAME,
+                new ConfigurationBuilder()
+                    .simpleCache(true)
+                    .memory()
+                    .maxCount(maxEntries)
+                    .expiration()
+                    .lifespan(lifespan, TimeUnit.SECONDS)
+                    .build());
+          }
+          Cache<String, Object> cache = manager.getCache(ORGANIZATION_CACHE_NAME);
+          OrganizationCacheManager m = new OrganizationCacheManager(cache, invitationFilterMaxAge);
+          session
+              .getProvider(ClusterProvider.class)
+              .registerListener(ORGANIZATION_INVALIDATION_EVENTS, m);
+          cacheManager = m;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void init(Scope config) {
+    maxEntries = config.getLong("maxEntries", 10000L);
+    lifespan = config.getLong("lifespan", 600L);
+    invitationFilterMaxAge = config.getLong("invitationFilterMaxAge", 3600L);
+  }
+
+  @Override
+  public void postInit(KeycloakSessionFactory factory) {
+    factory.register(
+        (ProviderEvent event) -> {
+          if (event instanceof RealmModel.IdentityProviderUpdatedEvent) {
+            RealmModel.IdentityProviderUpdatedEvent e =
+                (RealmModel.IdentityProviderUpdatedEvent) event;
+            identityProvidersChanged(e.getKeycloakSession(), e.getRealm());
+          } else if (event instanceof RealmModel.IdentityProviderRemovedEvent) {
+            RealmModel.IdentityProviderRemovedEvent e =
+                (RealmModel.IdentityProviderRemovedEvent) event;
+            identityProvidersChanged(e.getKeycloakSession(), e.getRealm());
+          } else if (event instanceof OrganizationModel.OrganizationIdentityProvidersChangedEvent) {
+            OrganizationModel.OrganizationEvent e = (OrganizationModel.OrganizationEvent) event;
+            identityProvidersChanged(e.getKeycloakSession(), e.getRealm());
+          }
+        });
+  }
+
+  private void identityProvidersChanged(KeycloakSession session, RealmModel realm) {
+    OrganizationProvider provider = session.getProvider(OrganizationProvider.class);
+    if (provider instanceof InfinispanOrganizationProvider) {
+      ((InfinispanOrganizationProvider) provider)
+          .registerIdentityProvidersInvalidation(realm.getId());
+    }
+  }
+
+  @Override
+  public int order() {
+    return 1;
+  }
+
+  @Override
+  public void close() {}
+}
@@ -0,0 +1,68 @@
+package io.phasetwo.service.model.infinispan;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.keycloak.common.util.Time;
+
+/**
+ * Bloom filter over the emails that have a pending invitation in a realm, so the invitation checks
+ * that run on every login can skip the query for users who can't have one. A positive answer may
+ * be wrong and falls through to the query. Emails are added as invitations are created; revoked
+ * invitations stay in the filter until it is rebuilt.
+ */
+public class InvitationFilter {
+
+  static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+  static final int MIN_EXPECTED_INSERTIONS = 1000;
+
+  private final BloomFilter<String> filter;
+  private final long expectedInsertions;
+  private final int createdAt;
+  private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+  public InvitationFilter(Collection<String> emails) {
+    this.expectedInsertions = Math.max(MIN_EXPECTED_INSERTIONS, 2L * emails.size());
+    this.filter =
+        BloomFilter.create(
+            Funnels.stringFunnel(StandardCharsets.UTF_8),
+            expectedInsertions,
+            FALSE_POSITIVE_PROBABILITY);
+    this.createdAt = Time.currentTime();
+    emails.forEach(this::put);
+  }
+
+  public void put(String email) {
+    filter.put(normalizeEmail(email));
+  }
+
+  /** False if there is certainly no pending invitation for the email. */
+  public boolean mightHaveInvitation(String email) {
+    return filter.mightContain(normalizeEmail(email));
+  }
+
+  /**
+   * Whether the filter is older than the max age, or has had so many emails added that its false
+   * positive rate has degraded.
+   */
+  boolean isStale(long maxAge) {
+    return Time.currentTime() - createdAt > maxAge
+        || filter.approximateElementCount() > expectedInsertions;
+  }
+
+  /** Claim the rebuild of a stale filter, so only one session at a time does it. */
+  boolean claimRebuild() {
+    return rebuilding.compareAndSet(false, true);
+  }
+
+  void releaseRebuild() {
+    rebuilding.set(false);
+  }
+
+  static String normalizeEmail(String email) {
+    return email.trim().toLowerCase(Locale.ROOT);
+  }
+}
@@ -0,0 +1,331 @@
+package io.phasetwo.service.model.infinispan;
+
+import com.google.common.collect.Sets;
+import io.phasetwo.service.model.DomainModel;
+import io.phasetwo.service.model.InvitationModel;
+import io.phasetwo.service.model.OrganizationModel;
+import io.phasetwo.service.model.OrganizationRoleModel;
+import io.phasetwo.service.model.RoleMappingChanges;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.keycloak.common.util.MultivaluedHashMap;
+import org.keycloak.models.IdentityProviderModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+
+/**
+ * Organization backed by a {@link CachedOrganization}. The first write registers an invalidation
+ * and switches the adapter over to the JPA delegate for the rest of the transaction. Data that
+ * isn't cached (members, invitations) is always read from the delegate.
+ */
+public class OrganizationAdapter implements OrganizationModel {
+
+  protected final KeycloakSession session;
+  protected final RealmModel realm;
+  protected final InfinispanOrganizationProvider orgCache;
+  protected final CachedOrganization cached;
+  protected OrganizationModel updated;
+  protected OrganizationModel delegate;
+
+  public OrganizationAdapter(
+      KeycloakSession session,
+      RealmModel realm,
+      InfinispanOrganizationProvider orgCache,
+      CachedOrganization cached,
+      OrganizationModel updated) {
+    this.session = session;
+    this.realm = realm;
+    this.orgCache = orgCache;
+    this.cached = cached;
+    this.updated = updated;
+  }
+
+  protected boolean isUpdated() {
+    return updated != null;
+  }
+
+  /** The JPA model, for reads of data that isn't cached and for writes that don't change it. */
+  protected OrganizationModel getDelegate() {
+    if (updated != null) return updated;
+    if (delegate == null) {
+      delegate = orgCache.getDelegate().getOrganizationById(realm, getId());
+      if (delegate == null) {
+        throw new IllegalStateException("Organization not found in database");
+      }
+    }
+    return delegate;
+  }
+
+  protected OrganizationModel getDelegateForUpdate() {
+    if (updated == null) {
+      orgCache.registerOrganizationInvalidation(getId());
+      updated = getDelegate();
+    }
+    return updated;
+  }
+
+  String getRealmId() {
+    if (isUpdated()) return updated.getRealm().getId();
+    return cached.getRealmId();
+  }
+
+  @Override
+  public String getId() {
+    if (isUpdated()) return updated.getId();
+    return cached.getId();
+  }
+
+  @Override
+  public String getName() {
+    if (isUpdated()) return updated.getName();
+    return cached.getName();
+  }
+
+  @Override
+  public void setName(String name) {
+    getDelegateForUpdate().setName(name);
+  }
+
+  @Override
+  public String getDisplayName() {
+    if (isUpdated()) return updated.getDisplayName();
+    return cached.getDisplayName();
+  }
+
+  @Override
+  public void setDisplayName(String displayName) {
+    getDelegateForUpdate().setDisplayName(displayName);
+  }
+
+  @Override
+  public Set<String> getDomains() {
+    if (isUpdated()) return updated.getDomains();
+    return new HashSet<>(cached.getDomains());
+  }
+
+  @Override
+  public void setDomains(Set<String> domains) {
+    // only added and removed domains invalidate the realm's domain index, so that updating an
+    // organization without changing its domains doesn't discard it
+    Set<String> current =
+        getDomains().stream()
+            .map(InfinispanOrganizationProvider::normalizeDomain)
+            .collect(Collectors.toSet());
+    Set<String> next =
+        domains.stream()
+            .map(InfinispanOrganizationProvider::normalizeDomain)
+            .collect(Collectors.toSet());
+    Sets.symmetricDifference(current, next)
+        .forEach(d -> orgCache.registerDomainInvalidation(getRealmId(), d));
+    getDelegateForUpdate().setDomains(domains);
+  }
+
+  @Override
+  public DomainModel getDomain(String name) {
+    DomainModel domain = getDelegate().getDomain(name);
+    return domain == null ? null : new DomainAdapter(orgCache, realm, domain);
+  }
+
+  @Override
+  public String getUrl() {
+    if (isUpdated()) return updated.getUrl();
+    return cached.getUrl();
+  }
+
+  @Override
+  public void setUrl(String url) {
+    getDelegateForUpdate().setUrl(url);
+  }
+
+  @Override
+  public RealmModel getRealm() {
+    return session.realms().getRealm(getRealmId());
+  }
+
+  @Override
+  public UserModel getCreatedBy() {
+    if (isUpdated()) return updated.getCreatedBy();
+    return session.users().getUserById(realm, cached.getCreatedBy());
+  }
+
+  @Override
+  public Map<String, List<String>> getAttributes() {
+    if (isUpdated()) return updated.getAttributes();
+    MultivaluedHashMap<String, String> result = new MultivaluedHashMap<>();
+    cached.getAttributes().forEach((k, v) -> result.addAll(k, v));
+    return result;
+  }
+
+  @Override
+  public void removeAttributes() {
+    getDelegateForUpdate().removeAttributes();
+  }
+
+  @Override
+  public void removeAttribute(String name) {
+    getDelegateForUpdate().removeAttribute(name);
+  }
+
+  @Override
+  public void setAttribute(String name, List<String> values) {
+    getDelegateForUpdate().setAttribute(name, values);
+  }
+
+  @Override
+  public Long getMembersCount() {
+    return getDelegate().getMembersCount();
+  }
+
+  @Override
+  public Stream<UserModel> getMembersStream() {
+    return getDelegate().getMembersStream();
+  }
+
+  @Override
+  public Stream<UserModel> searchForMembersStream(
+      String search, Integer firstResult, Integer maxResults) {
+    return getDelegate().searchForMembersStream(search, firstResult, maxResults);
+  }
+
+  @Override
+  public boolean hasMembership(UserModel user) {
+    return orgCache.getMemberships(realm, user).isMember(getId());
+  }
+
+  @Override
+  public void grantMembership(UserModel user) {
+    orgCache.registerMembershipsInvalidation(user.getId());
+    getDelegate().grantMembership(user);
+  }
+
+  @Override
+  public Set<String> getMemberIds(Collection<UserModel> users) {
+    return getDelegate().getMemberIds(users);
+  }
+
+  @Override
+  public Set<String> grantMemberships(Collection<UserModel> users) {
+    users.forEach(u -> orgCache.registerMembershipsInvalidation(u.getId()));
+    return getDelegate().grantMemberships(users);
+  }
+
+  @Override
+  public void revokeMembership(UserModel user) {
+    orgCache.registerMembershipsInvalidation(user.getId());
+    getDelegate().revokeMembership(user);
+  }
+
+  @Override
+  public Set<String> revokeMemberships(Collection<UserModel> users) {
+    users.forEach(u -> orgCache.registerMembershipsInvalidation(u.getId()));
+    return getDelegate().revokeMemberships(users);
+  }
+
+  @Override
+  public RoleMappingChanges setMemberRoles(Map<UserModel, Set<String>> roles) {
+    roles.keySet().forEach(u -> orgCache.registerMembershipsInvalidation(u.getId()));
+    return getDelegate().setMemberRoles(roles);
+  }
+
+  @Override
+  public Stream<InvitationModel> getInvitationsStream() {
+    return getDelegate().getInvitationsStream();
+  }
+
+  @Override
+  public Stream<InvitationModel> getInvitationsByEmail(String email) {
+    return getDelegate().getInvitationsByEmail(email);
+  }
+
+  @Override
+  public InvitationModel getInvitation(String id) {
+    return getDelegate().getInvitation(id);
+  }
+
+  @Override
+  public void revokeInvitation(String id) {
+    getDelegate().revokeInvitation(id);
+  }
+
+  @Override
+  public void revokeInvitations(String email) {
+    getDelegate().revokeInvitations(email);
+  }
+
+  @Override
+  public InvitationModel addInvitation(String email, UserModel inviter) {
+    orgCache.registerInvitation(getRealmId(), email);
+    return getDelegate().addInvitation(email, inviter);
+  }
+
+  @Override
+  public Set<String> getInvitedEmails(Collection<String> emails) {
+    return getDelegate().getInvitedEmails(emails);
+  }
+
+  @Override
+  public Set<String> getMemberEmails(Collection<String> emails) {
+    return getDelegate().getMemberEmails(emails);
+  }
+
+  @Override
+  public List<InvitationModel> addInvitations(
+      Map<String, UserModel> inviters, Consumer<InvitationModel> setup) {
+    orgCache.registerInvitations(getRealmId(), inviters.keySet());
+    return getDelegate().addInvitations(inviters, setup);
+  }
+
+  @Override
+  public Stream<OrganizationRoleModel> getRolesStream() {
+    if (isUpdated()) {
+      return updated.getRolesStream().map(r -> new OrganizationRoleAdapter(this, null, r));
+    }
+    return cached.getRoles().values().stream()
+        .map(r -> new OrganizationRoleAdapter(this, r, null));
+  }
+
+  @Override
+  public OrganizationRoleModel getRoleByName(String name) {
+    if (isUpdated()) {
+      OrganizationRoleModel r = updated.getRoleByName(name);
+      return r == null ? null : new OrganizationRoleAdapter(this, null, r);
+    }
+    CachedOrganization.CachedOrganizationRole r = cached.getRoles().get(name);
+    return r == null ? null : new OrganizationRoleAdapter(this, r, null);
+  }
+
+  @Override
+  public void removeRole(String name) {
+    orgCache.registerOrganizationMembershipsInvalidation(getId());
+    getDelegateForUpdate().removeRole(name);
+  }
+
+  @Override
+  public OrganizationRoleModel addRole(String name) {
+    return new OrganizationRoleAdapter(this, null, getDelegateForUpdate().addRole(name));
+  }
+
+  @Override
+  public Stream<IdentityProviderModel> getIdentityProvidersStream() {
+    return orgCache.getIdentityProvidersStream(realm, getId());
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof OrganizationModel)) return false;
+    return getId().equals(((OrganizationModel) o).getId());
+  }
+
+  @Override
+  public int hashCode() {
+    return getId().hashCode();
+  }
+}
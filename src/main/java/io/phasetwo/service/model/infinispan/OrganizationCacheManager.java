@@ -0,0 +1,167 @@
+package io.phasetwo.service.model.infinispan;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.jbosslog.JBossLog;
+import org.infinispan.Cache;
+import org.keycloak.cluster.ClusterEvent;
+import org.keycloak.cluster.ClusterListener;
+
+/**
+ * Owns the local organization cache on this node. Each invalidated key is stamped with a revision,
+ * and an entry is only added if its key hasn't been invalidated since the loading session started,
+ * so a slow reader can never put back a value that a concurrent writer has already evicted, while
+ * invalidations of other keys don't keep unrelated entries from being cached.
+ */
+@JBossLog
+public class OrganizationCacheManager implements ClusterListener {
+
+  /** Revision of the memberships of every user, bumped when those of a whole org are dropped. */
+  static final String ORGANIZATION_MEMBERSHIPS = "organization.memberships";
+
+  /** Past this many stamped keys, the revisions are folded into the floor. */
+  static final int MAX_REVISIONS = 10000;
+
+  private final Cache<String, Object> cache;
+  private final AtomicLong revision = new AtomicLong();
+  private final Map<String, Long> revisions = new ConcurrentHashMap<>();
+  // the revision of every key that isn't stamped
+  private volatile long revisionFloor;
+  private final Map<String, InvitationFilter> invitationFilters = new ConcurrentHashMap<>();
+  private final AtomicLong invitationRevision = new AtomicLong();
+  private final long invitationFilterMaxAge;
+
+  public OrganizationCacheManager(Cache<String, Object> cache, long invitationFilterMaxAge) {
+    this.cache = cache;
+    this.invitationFilterMaxAge = invitationFilterMaxAge;
+  }
+
+  public long getCurrentRevision() {
+    return revision.get();
+  }
+
+  public <T> T get(String key, Class<T> type) {
+    Object o = cache.get(key);
+    return type.isInstance(o) ? type.cast(o) : null;
+  }
+
+  long getRevision(String key) {
+    Long r = revisions.get(key);
+    return r == null ? revisionFloor : r;
+  }
+
+  /**
+   * Add the entry, unless its key or any of the keys it was loaded from has been invalidated since
+   * the session started at the startup revision.
+   */
+  public void addRevisioned(
+      String key, Object value, long startupRevision, String... dependencies) {
+    if (isStale(key, dependencies, startupRevision)) return;
+    cache.put(key, value);
+    // an invalidation may have slipped in between the check and the put
+    if (isStale(key, dependencies, startupRevision)) cache.remove(key);
+  }
+
+  private boolean isStale(String key, String[] dependencies, long startupRevision) {
+    if (getRevision(key) > startupRevision) return true;
+    for (String d : dependencies) {
+      if (getRevision(d) > startupRevision) return true;
+    }
+    return false;
+  }
+
+  public void invalidate(Collection<String> keys, Collection<String> organizationIds) {
+    // stamp before removing, so a put that passed its first check is undone by its second
+    synchronized (revisions) {
+      long current = revision.incrementAndGet();
+      keys.forEach(k -> revisions.put(k, current));
+      if (!organizationIds.isEmpty()) revisions.put(ORGANIZATION_MEMBERSHIPS, current);
+      if (revisions.size() > MAX_REVISIONS) {
+        // keys whose stamp is dropped look invalidated to every session that started before now
+        revisionFloor = current;
+        revisions.clear();
+      }
+    }
+    keys.forEach(cache::remove);
+    if (!organizationIds.isEmpty()) {
+      List<String> memberships = new ArrayList<>();
+      for (Map.Entry<String, Object> e : cache.entrySet()) {
+        if (e.getValue() instanceof CachedMemberships
+            && ((CachedMemberships) e.getValue()).containsAny(organizationIds)) {
+          memberships.add(e.getKey());
+        }
+      }
+      memberships.forEach(cache::remove);
+    }
+  }
+
+  public long getInvitationRevision() {
+    return invitationRevision.get();
+  }
+
+  /**
+   * Get the realm's invitation filter, or null if it must be built. A stale filter is still
+   * returned to every session but the one that claims its rebuild.
+   */
+  public InvitationFilter getInvitationFilter(String realmId) {
+    InvitationFilter filter = invitationFilters.get(realmId);
+    if (filter == null) return null;
+    if (filter.isStale(invitationFilterMaxAge) && filter.claimRebuild()) return null;
+    return filter;
+  }
+
+  /**
+   * Replace the realm's invitation filter, unless an invitation has been added since the build
+   * started, in which case the new filter may be missing it and is discarded.
+   */
+  public synchronized boolean putInvitationFilter(
+      String realmId, InvitationFilter filter, long startRevision) {
+    if (invitationRevision.get() != startRevision) return false;
+    invitationFilters.put(realmId, filter);
+    return true;
+  }
+
+  /**
+   * Release the claim on the rebuild of the realm's stale filter, after a rebuild that didn't
+   * replace it, so that another session can try again.
+   */
+  public void releaseInvitationFilterRebuild(String realmId) {
+    InvitationFilter current = invitationFilters.get(realmId);
+    if (current != null) current.releaseRebuild();
+  }
+
+  /** Add the emails of new invitations to the filters of their realms, by realm id. */
+  public synchronized void addInvitations(Map<String, ? extends Collection<String>> invitations) {
+    if (invitations.isEmpty()) return;
+    invitationRevision.incrementAndGet();
+    invitations.forEach(
+        (realmId, emails) -> {
+          InvitationFilter filter = invitationFilters.get(realmId);
+          if (filter != null) emails.forEach(filter::put);
+        });
+  }
+
+  public synchronized void clear() {
+    synchronized (revisions) {
+      revisionFloor = revision.incrementAndGet();
+      revisions.clear();
+    }
+    cache.clear();
+    invitationRevision.incrementAndGet();
+    invitationFilters.clear();
+  }
+
+  @Override
+  public void eventReceived(ClusterEvent event) {
+    if (event instanceof OrganizationInvalidationEvent) {
+      OrganizationInvalidationEvent e = (OrganizationInvalidationEvent) event;
+      log.tracef("Received %s", e);
+      invalidate(e.getKeys(), e.getOrganizationIds());
+      addInvitations(e.getInvitations());
+    }
+  }
+}
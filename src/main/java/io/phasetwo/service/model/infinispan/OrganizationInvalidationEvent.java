@@ -0,0 +1,53 @@
+package io.phasetwo.service.model.infinispan;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.keycloak.cluster.ClusterEvent;
+
+/**
+ * Sent to the other nodes in the cluster after a transaction that wrote organization data has
+ * completed, so they can evict the affected entries from their local cache.
+ */
+public class OrganizationInvalidationEvent implements ClusterEvent, Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Set<String> keys;
+  private final Set<String> organizationIds;
+  private final Map<String, HashSet<String>> invitations;
+
+  public OrganizationInvalidationEvent(
+      Set<String> keys,
+      Set<String> organizationIds,
+      Map<String, ? extends Set<String>> invitations) {
+    this.keys = new HashSet<>(keys);
+    this.organizationIds = new HashSet<>(organizationIds);
+    this.invitations = new HashMap<>();
+    invitations.forEach((k, v) -> this.invitations.put(k, new HashSet<>(v)));
+  }
+
+  /** Cache keys to evict. */
+  public Set<String> getKeys() {
+    return keys;
+  }
+
+  /** Organizations for which every cached membership must be evicted. */
+  public Set<String> getOrganizationIds() {
+    return organizationIds;
+  }
+
+  /** Emails of invitations created in the transaction, by realm id. */
+  public Map<String, HashSet<String>> getInvitations() {
+    return invitations;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "OrganizationInvalidationEvent [ keys=%s, organizationIds=%s, invitations=%s ]",
+        keys, organizationIds, invitations.keySet());
+  }
+}
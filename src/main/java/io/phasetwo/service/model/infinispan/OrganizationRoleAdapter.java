@@ -0,0 +1,125 @@
+package io.phasetwo.service.model.infinispan;
+
+import io.phasetwo.service.model.OrganizationRoleModel;
+import java.util.Collection;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.keycloak.models.UserModel;
+
+/**
+ * Organization role backed by a cached role. Role checks are answered from the user's cached
+ * memberships.
+ */
+public class OrganizationRoleAdapter implements OrganizationRoleModel {
+
+  protected final OrganizationAdapter org;
+  protected final CachedOrganization.CachedOrganizationRole cached;
+  protected OrganizationRoleModel updated;
+  protected OrganizationRoleModel delegate;
+
+  public OrganizationRoleAdapter(
+      OrganizationAdapter org,
+      CachedOrganization.CachedOrganizationRole cached,
+      OrganizationRoleModel updated) {
+    this.org = org;
+    this.cached = cached;
+    this.updated = updated;
+  }
+
+  protected OrganizationRoleModel getDelegate() {
+    if (updated != null) return updated;
+    if (delegate == null) {
+      delegate = org.getDelegate().getRoleByName(cached.getName());
+      if (delegate == null) {
+        throw new IllegalStateException("Organization role not found in database");
+      }
+    }
+    return delegate;
+  }
+
+  protected OrganizationRoleModel getDelegateForUpdate() {
+    if (updated == null) {
+      // role names are held in every cached membership for this organization
+      org.orgCache.registerOrganizationMembershipsInvalidation(org.getId());
+      updated = org.getDelegateForUpdate().getRoleByName(getName());
+      if (updated == null) {
+        throw new IllegalStateException("Organization role not found in database");
+      }
+    }
+    return updated;
+  }
+
+  @Override
+  public String getId() {
+    if (updated != null) return updated.getId();
+    return cached.getId();
+  }
+
+  @Override
+  public String getName() {
+    if (updated != null) return updated.getName();
+    return cached.getName();
+  }
+
+  @Override
+  public void setName(String name) {
+    getDelegateForUpdate().setName(name);
+  }
+
+  @Override
+  public String getDescription() {
+    if (updated != null) return updated.getDescription();
+    return cached.getDescription();
+  }
+
+  @Override
+  public void setDescription(String description) {
+    getDelegateForUpdate().setDescription(description);
+  }
+
+  @Override
+  public Stream<UserModel> getUserMappingsStream() {
+    return getDelegate().getUserMappingsStream();
+  }
+
+  @Override
+  public void grantRole(UserModel user) {
+    org.orgCache.registerMembershipsInvalidation(user.getId());
+    getDelegate().grantRole(user);
+  }
+
+  @Override
+  public Set<String> grantRoleToUsers(Collection<UserModel> users) {
+    users.forEach(u -> org.orgCache.registerMembershipsInvalidation(u.getId()));
+    return getDelegate().grantRoleToUsers(users);
+  }
+
+  @Override
+  public void revokeRole(UserModel user) {
+    org.orgCache.registerMembershipsInvalidation(user.getId());
+    getDelegate().revokeRole(user);
+  }
+
+  @Override
+  public Set<String> revokeRoleFromUsers(Collection<UserModel> users) {
+    users.forEach(u -> org.orgCache.registerMembershipsInvalidation(u.getId()));
+    return getDelegate().revokeRoleFromUsers(users);
+  }
+
+  @Override
+  public boolean hasRole(UserModel user) {
+    return org.orgCache.getMemberships(org.realm, user).hasRole(org.getId(), getName());
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof OrganizationRoleModel)) return false;
+    return getId().equals(((OrganizationRoleModel) o).getId());
+  }
+
+  @Override
+  public int hashCode() {
+    return getId().hashCode();
+  }
+}
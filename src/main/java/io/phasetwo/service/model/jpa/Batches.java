@@ -0,0 +1,38 @@
+package io.phasetwo.service.model.jpa;
+
+import jakarta.persistence.EntityManager;
+import java.util.Collection;
+import java.util.function.Supplier;
+import org.hibernate.Session;
+
+/** Helpers for the bulk operations that write many rows at once. */
+final class Batches {
+
+  static final int CHUNK_SIZE = UserBatchLoader.CHUNK_SIZE;
+
+  private Batches() {}
+
+  /**
+   * Run the work with JDBC batching of up to a chunk of statements for this session, whatever the
+   * configured batch size is.
+   */
+  static <T> T withJdbcBatching(EntityManager em, Supplier<T> work) {
+    Session session = em.unwrap(Session.class);
+    Integer previous = session.getJdbcBatchSize();
+    session.setJdbcBatchSize(CHUNK_SIZE);
+    try {
+      return work.get();
+    } finally {
+      session.setJdbcBatchSize(previous);
+    }
+  }
+
+  /**
+   * Write a chunk of new or removed entities, then detach the new ones, so that later flushes of
+   * the same transaction don't have to dirty check them again.
+   */
+  static void flushAndDetach(EntityManager em, Collection<?> persisted) {
+    em.flush();
+    persisted.forEach(em::detach);
+  }
+}
@@ -36,6 +36,11 @@ public class DomainAdapter implements DomainModel, JpaModel<DomainEntity> {
         .getOrganizationById(realm, domain.getOrganization().getId());
   }
 
+  @Override
+  public String getOrganizationId() {
+    return domain.getOrganization().getId();
+  }
+
   @Override
   public String getDomain() {
     return domain.getDomain();
@@ -58,7 +58,8 @@ public class InvitationAdapter implements InvitationModel, JpaModel<InvitationEn
 
   @Override
   public void setEmail(String email) {
-    invitation.setEmail(email);
+    // stored lowercased, for the email lookups
+    invitation.setEmail(email == null ? null : email.toLowerCase());
   }
 
   @Override
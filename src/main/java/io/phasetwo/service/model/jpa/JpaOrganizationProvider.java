@@ -6,6 +6,7 @@ import static org.keycloak.utils.StreamsUtil.closing;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.net.InternetDomainName;
+import io.phasetwo.service.model.DomainModel;
 import io.phasetwo.service.model.InvitationModel;
 import io.phasetwo.service.model.OrganizationModel;
 import io.phasetwo.service.model.OrganizationProvider;
@@ -15,6 +16,7 @@ import io.phasetwo.service.model.jpa.entity.OrganizationAttributeEntity;
 import io.phasetwo.service.model.jpa.entity.OrganizationEntity;
 import io.phasetwo.service.model.jpa.entity.OrganizationMemberEntity;
 import io.phasetwo.service.resource.OrganizationAdminAuth;
+import io.phasetwo.service.util.Domains;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.CriteriaBuilder;
@@ -23,11 +25,16 @@ import jakarta.persistence.criteria.Join;
 import jakarta.persistence.criteria.JoinType;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Stream;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.RealmModel;
@@ -36,6 +43,19 @@ import org.keycloak.models.utils.KeycloakModelUtils;
 
 public class JpaOrganizationProvider implements OrganizationProvider {
 
+  private static final List<String> DEFAULT_ROLES =
+      Arrays.asList(OrganizationAdminAuth.DEFAULT_ORG_ROLES);
+
+  /** Default roles first, in the order they are created, then custom roles by name. */
+  private static final Comparator<String> ROLE_ORDER =
+      Comparator.comparingInt(JpaOrganizationProvider::defaultRoleIndex)
+          .thenComparing(Comparator.naturalOrder());
+
+  private static int defaultRoleIndex(String role) {
+    int i = DEFAULT_ROLES.indexOf(role);
+    return i < 0 ? Integer.MAX_VALUE : i;
+  }
+
   protected final KeycloakSession session;
   protected final EntityManager em;
 
@@ -95,6 +115,35 @@ public class JpaOrganizationProvider implements OrganizationProvider {
         .map(de -> new OrganizationAdapter(session, realm, em, de.getOrganization()));
   }
 
+  @Override
+  public Stream<OrganizationModel> getOrganizationsStreamForDomainOrParent(
+      RealmModel realm, String domain, boolean verified) {
+    List<String> names = Domains.getDomainAndParents(domain);
+    if (names.isEmpty()) return Stream.empty();
+    TypedQuery<DomainEntity> query = em.createNamedQuery("getDomainsByNames", DomainEntity.class);
+    query.setParameter("domains", names);
+    query.setParameter("realmId", realm.getId());
+    List<DomainEntity> matches = query.getResultList();
+    matches.removeIf(de -> verified && !de.isVerified());
+    if (matches.isEmpty()) return Stream.empty();
+    // names are ordered from the domain itself to its shortest parent
+    String nearest =
+        matches.stream()
+            .map(DomainEntity::getDomain)
+            .min(Comparator.comparingInt(names::indexOf))
+            .get();
+    return matches.stream()
+        .filter(de -> de.getDomain().equals(nearest))
+        .map(de -> new OrganizationAdapter(session, realm, em, de.getOrganization()));
+  }
+
+  @Override
+  public Stream<DomainModel> getDomainsStream(RealmModel realm) {
+    TypedQuery<DomainEntity> query = em.createNamedQuery("getDomainsByRealm", DomainEntity.class);
+    query.setParameter("realmId", realm.getId());
+    return query.getResultStream().map(de -> new DomainAdapter(session, realm, em, de));
+  }
+
   public static String createSearchString(String search) {
     if (Strings.isNullOrEmpty(search)) return "%";
     if (!search.startsWith("%")) search = "%" + search;
@@ -112,6 +161,24 @@ public class JpaOrganizationProvider implements OrganizationProvider {
         .map(e -> new OrganizationAdapter(session, realm, em, e.getOrganization()));
   }
 
+  @Override
+  public Map<String, Set<String>> getUserOrganizationRoles(RealmModel realm, UserModel user) {
+    // one row per role of each organization, with a mapping id if the user has the role
+    TypedQuery<Object[]> query = em.createNamedQuery("getOrganizationRolesByUserId", Object[].class);
+    query.setParameter("id", user.getId());
+    query.setParameter("realmId", realm.getId());
+    Map<String, Set<String>> roles = new LinkedHashMap<>();
+    query
+        .getResultStream()
+        .forEach(
+            row -> {
+              Set<String> names =
+                  roles.computeIfAbsent((String) row[0], k -> new TreeSet<>(ROLE_ORDER));
+              if (row[1] != null && row[2] != null) names.add((String) row[1]);
+            });
+    return roles;
+  }
+
   @Override
   @SuppressWarnings("unchecked")
   public Stream<OrganizationModel> searchForOrganizationStream(
@@ -120,6 +187,43 @@ public class JpaOrganizationProvider implements OrganizationProvider {
       Integer firstResult,
       Integer maxResults,
       Optional<UserModel> member) {
+    TypedQuery<OrganizationEntity> query = searchQuery(realm, attributes, null, null, member);
+    return getResultStream(paginateQuery(query, firstResult, maxResults), maxResults)
+        .map(orgEntity -> new OrganizationAdapter(session, realm, em, orgEntity));
+  }
+
+  @Override
+  public Stream<OrganizationModel> searchForOrganizationStreamAfter(
+      RealmModel realm,
+      Map<String, String> attributes,
+      String afterName,
+      String afterId,
+      Integer maxResults,
+      Optional<UserModel> member) {
+    TypedQuery<OrganizationEntity> query =
+        searchQuery(realm, attributes, afterName, afterId, member);
+    return getResultStream(paginateQuery(query, null, maxResults), maxResults)
+        .map(orgEntity -> new OrganizationAdapter(session, realm, em, orgEntity));
+  }
+
+  /**
+   * Pages are loaded whole, so that the domains, attributes and roles of all of their organizations
+   * are batch fetched together when the first of them is read. Unpaginated results are streamed.
+   */
+  private static Stream<OrganizationEntity> getResultStream(
+      TypedQuery<OrganizationEntity> query, Integer maxResults) {
+    if (maxResults != null && maxResults >= 0) {
+      return query.getResultList().stream();
+    }
+    return closing(query.getResultStream());
+  }
+
+  private TypedQuery<OrganizationEntity> searchQuery(
+      RealmModel realm,
+      Map<String, String> attributes,
+      String afterName,
+      String afterId,
+      Optional<UserModel> member) {
     if (attributes == null) {
       attributes = ImmutableMap.of();
     }
@@ -127,19 +231,27 @@ public class JpaOrganizationProvider implements OrganizationProvider {
     CriteriaQuery<OrganizationEntity> queryBuilder = builder.createQuery(OrganizationEntity.class);
     Root<OrganizationEntity> root = queryBuilder.from(OrganizationEntity.class);
 
-    List<Predicate> predicates = attributePredicates(attributes, root);
+    List<Predicate> predicates = attributePredicates(attributes, queryBuilder, root);
 
     predicates.add(builder.equal(root.get("realmId"), realm.getId()));
 
     member.ifPresent(u -> predicates.add(memberPredicate(u, root)));
 
-    queryBuilder.where(predicates.toArray(new Predicate[0])).orderBy(builder.asc(root.get("name")));
+    if (afterName != null && afterId != null) {
+      // seek past the last row of the previous page, in (name, id) order
+      predicates.add(
+          builder.or(
+              builder.greaterThan(root.get("name"), afterName),
+              builder.and(
+                  builder.equal(root.get("name"), afterName),
+                  builder.greaterThan(root.get("id"), afterId))));
+    }
 
-    TypedQuery<OrganizationEntity> query = em.createQuery(queryBuilder);
+    queryBuilder
+        .where(predicates.toArray(new Predicate[0]))
+        .orderBy(builder.asc(root.get("name")), builder.asc(root.get("id")));
 
-    return closing(paginateQuery(query, firstResult, maxResults).getResultStream())
-        .map(orgEntity -> getOrganizationById(realm, orgEntity.getId()))
-        .filter(Objects::nonNull);
+    return em.createQuery(queryBuilder);
   }
 
   @Override
@@ -176,6 +288,30 @@ public class JpaOrganizationProvider implements OrganizationProvider {
     return query.getResultStream().map(i -> new InvitationAdapter(session, realm, em, i));
   }
 
+  @Override
+  public Stream<UserModel> getUsersStream(RealmModel realm, List<String> ids) {
+    return new UserBatchLoader(session, realm, em).getUsersStream(ids);
+  }
+
+  @Override
+  public boolean hasUserInvitations(RealmModel realm, UserModel user) {
+    if (user.getEmail() == null) return false;
+    // invitation emails are stored lowercased
+    TypedQuery<String> query =
+        em.createNamedQuery("getInvitationIdsByRealmAndExactEmail", String.class);
+    query.setParameter("realmId", realm.getId());
+    query.setParameter("email", user.getEmail().toLowerCase());
+    query.setMaxResults(1);
+    return !query.getResultList().isEmpty();
+  }
+
+  @Override
+  public Stream<String> getInvitationEmailsStream(RealmModel realm) {
+    TypedQuery<String> query = em.createNamedQuery("getInvitationEmailsByRealm", String.class);
+    query.setParameter("realmId", realm.getId());
+    return query.getResultStream();
+  }
+
   @Override
   public void close() {}
 
@@ -220,11 +356,12 @@ public class JpaOrganizationProvider implements OrganizationProvider {
   }
 
   private List<Predicate> attributePredicates(
-      Map<String, String> attributes, Root<OrganizationEntity> root) {
+      Map<String, String> attributes,
+      CriteriaQuery<OrganizationEntity> queryBuilder,
+      Root<OrganizationEntity> root) {
     CriteriaBuilder builder = em.getCriteriaBuilder();
 
     List<Predicate> predicates = new ArrayList<>();
-    List<Predicate> attributePredicates = new ArrayList<>();
 
     for (Map.Entry<String, String> entry : attributes.entrySet()) {
       String key = entry.getKey();
@@ -243,21 +380,22 @@ public class JpaOrganizationProvider implements OrganizationProvider {
                       builder.lower(root.get("displayName")), "%" + value.toLowerCase() + "%")));
           break;
         default:
-          Join<OrganizationEntity, OrganizationAttributeEntity> attributesJoin =
-              root.join("attributes", JoinType.LEFT);
-
-          attributePredicates.add(
-              builder.and(
-                  builder.equal(builder.lower(attributesJoin.get("name")), key.toLowerCase()),
-                  builder.equal(builder.lower(attributesJoin.get("value")), value.toLowerCase())));
+          // each attribute is matched by its own row. names and values are case-insensitive, and
+          // compared with their indexed lowercased copies
+          Subquery<String> attribute = queryBuilder.subquery(String.class);
+          Root<OrganizationAttributeEntity> attr =
+              attribute.from(OrganizationAttributeEntity.class);
+          attribute
+              .select(attr.get("id"))
+              .where(
+                  builder.equal(attr.get("organization"), root),
+                  builder.equal(attr.get("nameLowerCase"), key.toLowerCase()),
+                  builder.equal(attr.get("valueLowerCase"), value.toLowerCase()));
+          predicates.add(builder.exists(attribute));
           break;
       }
     }
 
-    if (!attributePredicates.isEmpty()) {
-      predicates.add(builder.and(attributePredicates.toArray(new Predicate[0])));
-    }
-
     return predicates;
   }
 
@@ -1,23 +1,34 @@
 package io.phasetwo.service.model.jpa;
 
 import static io.phasetwo.service.Orgs.*;
+import static io.phasetwo.service.model.jpa.JpaOrganizationProvider.createSearchString;
+import static org.keycloak.models.jpa.PaginationUtils.paginateQuery;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.Iterables;
 import io.phasetwo.service.model.DomainModel;
 import io.phasetwo.service.model.InvitationModel;
 import io.phasetwo.service.model.OrganizationModel;
 import io.phasetwo.service.model.OrganizationRoleModel;
+import io.phasetwo.service.model.RoleMappingChanges;
 import io.phasetwo.service.model.jpa.entity.DomainEntity;
 import io.phasetwo.service.model.jpa.entity.InvitationEntity;
 import io.phasetwo.service.model.jpa.entity.OrganizationAttributeEntity;
 import io.phasetwo.service.model.jpa.entity.OrganizationEntity;
 import io.phasetwo.service.model.jpa.entity.OrganizationMemberEntity;
 import io.phasetwo.service.model.jpa.entity.OrganizationRoleEntity;
+import io.phasetwo.service.model.jpa.entity.UserOrganizationRoleMappingEntity;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.keycloak.common.util.MultivaluedHashMap;
@@ -165,18 +176,19 @@ public class OrganizationAdapter implements OrganizationModel, JpaModel<Organiza
   @Override
   public Stream<UserModel> searchForMembersStream(
       String search, Integer firstResult, Integer maxResults) {
-    // TODO this could be optimized for large member lists with a query
-    return getMembersStream()
-        .filter(
-            (m) -> {
-              if (Strings.isNullOrEmpty(search)) return true;
-              return (m.getEmail() != null && m.getEmail().toLowerCase().contains(search))
-                  || (m.getUsername() != null && m.getUsername().toLowerCase().contains(search))
-                  || (m.getFirstName() != null && m.getFirstName().toLowerCase().contains(search))
-                  || (m.getLastName() != null && m.getLastName().toLowerCase().contains(search));
-            })
-        .skip(firstResult)
-        .limit(maxResults);
+    // without a search, members are listed from ORGANIZATION_MEMBER alone, so that members
+    // without a USER_ENTITY row, such as unimported federated users, are not dropped
+    TypedQuery<String> query;
+    if (Strings.isNullOrEmpty(search)) {
+      query = em.createNamedQuery("getUserIdsByOrganization", String.class);
+    } else {
+      query = em.createNamedQuery("searchOrganizationMemberUserIds", String.class);
+      query.setParameter("search", createSearchString(search));
+    }
+    query.setParameter("organization", org);
+    return new UserBatchLoader(session, realm, em)
+        .getUsersStream(paginateQuery(query, firstResult, maxResults).getResultList())
+        .filter(u -> u.getServiceAccountClientLink() == null);
   }
 
   @Override
@@ -188,15 +200,53 @@ public class OrganizationAdapter implements OrganizationModel, JpaModel<Organiza
 
   @Override
   public Stream<UserModel> getMembersStream() {
-    return org.getMembers().stream()
-        .map(m -> m.getUserId())
-        .map(uid -> session.users().getUserById(realm, uid))
-        .filter(u -> u != null && u.getServiceAccountClientLink() == null);
+    TypedQuery<String> query = em.createNamedQuery("getUserIdsByOrganization", String.class);
+    query.setParameter("organization", org);
+    return new UserBatchLoader(session, realm, em)
+        .getUsersStream(query.getResultList())
+        .filter(u -> u.getServiceAccountClientLink() == null);
+  }
+
+  /**
+   * Lazy collections are only kept in step with changes made by query when they have already been
+   * loaded, so that a membership change doesn't load all of the organization's members.
+   */
+  static boolean isLoaded(EntityManager em, Object entity, String attribute) {
+    return em.getEntityManagerFactory().getPersistenceUnitUtil().isLoaded(entity, attribute);
+  }
+
+  private OrganizationMemberEntity getMember(UserModel user) {
+    TypedQuery<OrganizationMemberEntity> query =
+        em.createNamedQuery("getOrganizationMemberByUserId", OrganizationMemberEntity.class);
+    query.setParameter("organization", org);
+    query.setParameter("id", user.getId());
+    query.setMaxResults(1);
+    return query.getResultStream().findFirst().orElse(null);
   }
 
   @Override
   public boolean hasMembership(UserModel user) {
-    return org.getMembers().stream().anyMatch(m -> m.getUserId().equals(user.getId()));
+    return getMember(user) != null;
+  }
+
+  @Override
+  public Set<String> getMemberIds(Collection<UserModel> users) {
+    Set<String> members = new LinkedHashSet<>();
+    for (List<UserModel> chunk : Iterables.partition(users, Batches.CHUNK_SIZE)) {
+      List<String> ids = chunk.stream().map(UserModel::getId).collect(Collectors.toList());
+      Set<String> found = getMemberIdsIn(ids);
+      ids.stream().filter(found::contains).forEach(members::add);
+    }
+    return members;
+  }
+
+  /** The ids of the members among a chunk of user ids, with one query. */
+  private Set<String> getMemberIdsIn(List<String> ids) {
+    return new HashSet<>(
+        em.createNamedQuery("getOrganizationMemberUserIdsByUserIds", String.class)
+            .setParameter("organization", org)
+            .setParameter("ids", ids)
+            .getResultList());
   }
 
   @Override
@@ -207,17 +257,161 @@ public class OrganizationAdapter implements OrganizationModel, JpaModel<Organiza
     m.setUserId(user.getId());
     m.setOrganization(org);
     em.persist(m);
-    org.getMembers().add(m);
+    if (isLoaded(em, org, "members")) org.getMembers().add(m);
+  }
+
+  @Override
+  public Set<String> grantMemberships(Collection<UserModel> users) {
+    return Batches.withJdbcBatching(
+        em,
+        () -> {
+          Set<String> granted = new LinkedHashSet<>();
+          boolean loaded = isLoaded(em, org, "members");
+          for (List<UserModel> chunk : Iterables.partition(users, Batches.CHUNK_SIZE)) {
+            List<String> ids = chunk.stream().map(UserModel::getId).collect(Collectors.toList());
+            Set<String> members = getMemberIdsIn(ids);
+            List<OrganizationMemberEntity> created = new ArrayList<>();
+            for (String id : ids) {
+              if (!members.add(id)) continue;
+              OrganizationMemberEntity m = new OrganizationMemberEntity();
+              m.setId(KeycloakModelUtils.generateId());
+              m.setUserId(id);
+              m.setOrganization(org);
+              em.persist(m);
+              created.add(m);
+              granted.add(id);
+            }
+            if (loaded) {
+              org.getMembers().addAll(created);
+              em.flush();
+            } else {
+              Batches.flushAndDetach(em, created);
+            }
+          }
+          return granted;
+        });
   }
 
   @Override
   public void revokeMembership(UserModel user) {
-    if (!hasMembership(user)) return;
-    org.getMembers().removeIf(m -> m.getUserId().equals(user.getId()));
-    getRolesStream().forEach(r -> r.revokeRole(user));
+    OrganizationMemberEntity member = getMember(user);
+    if (member == null) return;
+    TypedQuery<UserOrganizationRoleMappingEntity> query =
+        em.createNamedQuery(
+            "getMappingsByOrganizationAndUser", UserOrganizationRoleMappingEntity.class);
+    query.setParameter("organization", org);
+    query.setParameter("userId", user.getId());
+    query
+        .getResultList()
+        .forEach(
+            m -> {
+              OrganizationRoleEntity role = m.getRole();
+              if (isLoaded(em, role, "userMappings")) role.getUserMappings().remove(m);
+              em.remove(m);
+            });
+    if (isLoaded(em, org, "members")) org.getMembers().remove(member);
+    em.remove(member);
     if (user.getEmail() != null) revokeInvitations(user.getEmail());
   }
 
+  /**
+   * Role mappings and memberships are removed with bulk deletes, two statements per chunk of
+   * users, so the collections of this organization and its roles that are already loaded are
+   * updated by hand. Invitations are removed one by one, so that their roles and attributes are
+   * removed with them, but there are usually few.
+   */
+  @Override
+  public Set<String> revokeMemberships(Collection<UserModel> users) {
+    Set<String> revoked = new LinkedHashSet<>();
+    // the bulk deletes bypass the persistence context
+    em.flush();
+    for (List<UserModel> chunk : Iterables.partition(users, Batches.CHUNK_SIZE)) {
+      List<String> ids = chunk.stream().map(UserModel::getId).collect(Collectors.toList());
+      Set<String> members = getMemberIdsIn(ids);
+      if (members.isEmpty()) continue;
+      em.createNamedQuery("deleteMappingsByOrganizationAndUsers")
+          .setParameter("organization", org)
+          .setParameter("ids", members)
+          .executeUpdate();
+      em.createNamedQuery("deleteOrganizationMembersByUserIds")
+          .setParameter("organization", org)
+          .setParameter("ids", members)
+          .executeUpdate();
+      for (OrganizationRoleEntity role : org.getRoles()) {
+        if (isLoaded(em, role, "userMappings")) {
+          role.getUserMappings().removeIf(m -> members.contains(m.getUserId()));
+        }
+      }
+      if (isLoaded(em, org, "members")) {
+        org.getMembers().removeIf(m -> members.contains(m.getUserId()));
+      }
+      List<String> emails =
+          chunk.stream()
+              .filter(u -> members.contains(u.getId()) && u.getEmail() != null)
+              .map(u -> u.getEmail().toLowerCase())
+              .collect(Collectors.toList());
+      if (!emails.isEmpty()) {
+        em.createNamedQuery("getInvitationsByOrganizationAndEmails", InvitationEntity.class)
+            .setParameter("organization", org)
+            .setParameter("emails", emails)
+            .getResultList()
+            .forEach(this::removeInvitation);
+      }
+      chunk.stream().map(UserModel::getId).filter(members::contains).forEach(revoked::add);
+    }
+    return revoked;
+  }
+
+  /**
+   * The members among each chunk of users, their current mappings and the roles of the
+   * organization are read with a single query, one row per member and role. The diff against the
+   * desired roles is applied with JDBC batching.
+   */
+  @Override
+  public RoleMappingChanges setMemberRoles(Map<UserModel, Set<String>> roles) {
+    return Batches.withJdbcBatching(
+        em,
+        () -> {
+          RoleMappingChanges changes = new RoleMappingChanges();
+          Map<String, Set<String>> byId = new LinkedHashMap<>();
+          roles.forEach((user, names) -> byId.put(user.getId(), names));
+          for (List<String> ids : Iterables.partition(byId.keySet(), Batches.CHUNK_SIZE)) {
+            List<UserOrganizationRoleMappingEntity> created = new ArrayList<>();
+            em.createNamedQuery("getOrganizationRoleMappingsByUserIds", Object[].class)
+                .setParameter("organization", org)
+                .setParameter("ids", ids)
+                .getResultList()
+                .forEach(
+                    row -> {
+                      String userId = (String) row[0];
+                      OrganizationRoleEntity role = (OrganizationRoleEntity) row[1];
+                      UserOrganizationRoleMappingEntity mapping =
+                          (UserOrganizationRoleMappingEntity) row[2];
+                      if (role == null) return;
+                      boolean wanted = byId.get(userId).contains(role.getName());
+                      boolean loaded = isLoaded(em, role, "userMappings");
+                      if (wanted && mapping == null) {
+                        UserOrganizationRoleMappingEntity m =
+                            new UserOrganizationRoleMappingEntity();
+                        m.setId(KeycloakModelUtils.generateId());
+                        m.setUserId(userId);
+                        m.setRole(role);
+                        em.persist(m);
+                        if (loaded) role.getUserMappings().add(m);
+                        else created.add(m);
+                        changes.granted(userId, role.getName());
+                      } else if (!wanted && mapping != null) {
+                        if (loaded) role.getUserMappings().remove(mapping);
+                        em.remove(mapping);
+                        changes.revoked(userId, role.getName());
+                      }
+                    });
+            Batches.flushAndDetach(em, created);
+          }
+          return changes;
+        });
+  }
+
   @Override
   public Stream<InvitationModel> getInvitationsStream() {
     /*
@@ -244,12 +438,22 @@ public class OrganizationAdapter implements OrganizationModel, JpaModel<Organiza
 
   @Override
   public void revokeInvitation(String id) {
-    org.getInvitations().removeIf(inv -> inv.getId().equals(id));
+    InvitationEntity ie = em.find(InvitationEntity.class, id);
+    if (ie != null && ie.getOrganization().equals(org)) removeInvitation(ie);
   }
 
   @Override
   public void revokeInvitations(String email) {
-    org.getInvitations().removeIf(inv -> inv.getEmail().equals(email.toLowerCase()));
+    TypedQuery<InvitationEntity> query =
+        em.createNamedQuery("getInvitationsByOrganizationAndExactEmail", InvitationEntity.class);
+    query.setParameter("organization", org);
+    query.setParameter("email", email.toLowerCase());
+    query.getResultList().forEach(this::removeInvitation);
+  }
+
+  private void removeInvitation(InvitationEntity invitation) {
+    if (isLoaded(em, org, "invitations")) org.getInvitations().remove(invitation);
+    em.remove(invitation);
   }
 
   @Override
@@ -260,10 +464,74 @@ public class OrganizationAdapter implements OrganizationModel, JpaModel<Organiza
     inv.setEmail(email.toLowerCase());
     inv.setInviterId(inviter.getId());
     em.persist(inv);
-    org.getInvitations().add(inv);
+    if (isLoaded(em, org, "invitations")) org.getInvitations().add(inv);
     return new InvitationAdapter(session, realm, em, inv);
   }
 
+  @Override
+  public Set<String> getInvitedEmails(Collection<String> emails) {
+    return getEmailsIn("getInvitationEmailsByOrganizationAndEmails", emails);
+  }
+
+  /**
+   * Only users stored in the local database are matched, which includes users imported from user
+   * federation providers.
+   */
+  @Override
+  public Set<String> getMemberEmails(Collection<String> emails) {
+    return getEmailsIn("getOrganizationMemberEmailsByEmails", emails);
+  }
+
+  /** The results of a query for the lowercase emails among the emails, one query per chunk. */
+  private Set<String> getEmailsIn(String queryName, Collection<String> emails) {
+    List<String> lower =
+        emails.stream().map(String::toLowerCase).distinct().collect(Collectors.toList());
+    Set<String> found = new LinkedHashSet<>();
+    for (List<String> chunk : Iterables.partition(lower, Batches.CHUNK_SIZE)) {
+      found.addAll(
+          em.createNamedQuery(queryName, String.class)
+              .setParameter("organization", org)
+              .setParameter("emails", chunk)
+              .getResultList());
+    }
+    return found;
+  }
+
+  /** The invitations, with their roles and attributes, are inserted with JDBC batching. */
+  @Override
+  public List<InvitationModel> addInvitations(
+      Map<String, UserModel> inviters, Consumer<InvitationModel> setup) {
+    return Batches.withJdbcBatching(
+        em,
+        () -> {
+          List<InvitationModel> added = new ArrayList<>();
+          boolean loaded = isLoaded(em, org, "invitations");
+          for (List<Map.Entry<String, UserModel>> chunk :
+              Iterables.partition(inviters.entrySet(), Batches.CHUNK_SIZE)) {
+            List<InvitationEntity> created = new ArrayList<>();
+            for (Map.Entry<String, UserModel> e : chunk) {
+              InvitationEntity inv = new InvitationEntity();
+              inv.setId(KeycloakModelUtils.generateId());
+              inv.setOrganization(org);
+              inv.setEmail(e.getKey().toLowerCase());
+              inv.setInviterId(e.getValue().getId());
+              em.persist(inv);
+              created.add(inv);
+              InvitationModel invitation = new InvitationAdapter(session, realm, em, inv);
+              setup.accept(invitation);
+              added.add(invitation);
+            }
+            if (loaded) {
+              org.getInvitations().addAll(created);
+              em.flush();
+            } else {
+              Batches.flushAndDetach(em, created);
+            }
+          }
+          return added;
+        });
+  }
+
   @Override
   public Stream<OrganizationRoleModel> getRolesStream() {
     return org.getRoles().stream()
@@ -1,11 +1,19 @@
 package io.phasetwo.service.model.jpa;
 
+import com.google.common.collect.Iterables;
 import io.phasetwo.service.model.OrganizationModel;
 import io.phasetwo.service.model.OrganizationRoleModel;
 import io.phasetwo.service.model.jpa.entity.OrganizationRoleEntity;
 import io.phasetwo.service.model.jpa.entity.UserOrganizationRoleMappingEntity;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.RealmModel;
@@ -67,9 +75,9 @@ public class OrganizationRoleAdapter
 
   @Override
   public Stream<UserModel> getUserMappingsStream() {
-    return role.getUserMappings().stream()
-        .map(m -> m.getUserId())
-        .map(uid -> session.users().getUserById(realm, uid));
+    List<String> ids =
+        role.getUserMappings().stream().map(m -> m.getUserId()).collect(Collectors.toList());
+    return new UserBatchLoader(session, realm, em).getUsersStream(ids);
   }
 
   @Override
@@ -83,24 +91,91 @@ public class OrganizationRoleAdapter
     m.setUserId(user.getId());
     m.setRole(role);
     em.persist(m);
-    role.getUserMappings().add(m);
+    if (OrganizationAdapter.isLoaded(em, role, "userMappings")) role.getUserMappings().add(m);
+  }
+
+  /**
+   * Existing mappings are read with one query per chunk of users, and the missing mappings inserted
+   * in JDBC batches.
+   */
+  @Override
+  public Set<String> grantRoleToUsers(Collection<UserModel> users) {
+    return Batches.withJdbcBatching(
+        em,
+        () -> {
+          Set<String> granted = new LinkedHashSet<>();
+          boolean loaded = OrganizationAdapter.isLoaded(em, role, "userMappings");
+          for (List<UserModel> chunk : Iterables.partition(users, Batches.CHUNK_SIZE)) {
+            List<String> ids = chunk.stream().map(UserModel::getId).collect(Collectors.toList());
+            Set<String> mapped = getMappedUserIds(ids);
+            List<UserOrganizationRoleMappingEntity> created = new ArrayList<>();
+            for (String id : ids) {
+              if (!mapped.add(id)) continue;
+              UserOrganizationRoleMappingEntity m = new UserOrganizationRoleMappingEntity();
+              m.setId(KeycloakModelUtils.generateId());
+              m.setUserId(id);
+              m.setRole(role);
+              em.persist(m);
+              created.add(m);
+              granted.add(id);
+            }
+            if (loaded) {
+              role.getUserMappings().addAll(created);
+              em.flush();
+            } else {
+              Batches.flushAndDetach(em, created);
+            }
+          }
+          return granted;
+        });
   }
 
   @Override
   public void revokeRole(UserModel user) {
     UserOrganizationRoleMappingEntity e = getByUser(user);
     if (e != null) {
-      role.getUserMappings().remove(e);
+      if (OrganizationAdapter.isLoaded(em, role, "userMappings")) role.getUserMappings().remove(e);
       em.remove(e);
       em.flush();
     }
   }
 
+  /** Mappings are removed with one bulk delete per chunk of users. */
+  @Override
+  public Set<String> revokeRoleFromUsers(Collection<UserModel> users) {
+    Set<String> revoked = new LinkedHashSet<>();
+    // the bulk deletes bypass the persistence context
+    em.flush();
+    for (List<UserModel> chunk : Iterables.partition(users, Batches.CHUNK_SIZE)) {
+      List<String> ids = chunk.stream().map(UserModel::getId).collect(Collectors.toList());
+      Set<String> mapped = getMappedUserIds(ids);
+      if (mapped.isEmpty()) continue;
+      em.createNamedQuery("deleteMappingsByRoleAndUsers")
+          .setParameter("role", role)
+          .setParameter("ids", mapped)
+          .executeUpdate();
+      if (OrganizationAdapter.isLoaded(em, role, "userMappings")) {
+        role.getUserMappings().removeIf(m -> mapped.contains(m.getUserId()));
+      }
+      ids.stream().filter(mapped::contains).forEach(revoked::add);
+    }
+    return revoked;
+  }
+
   @Override
   public boolean hasRole(UserModel user) {
     return (getByUser(user) != null);
   }
 
+  /** The ids of the users among a chunk of ids who have the role, with one query. */
+  private Set<String> getMappedUserIds(Collection<String> ids) {
+    return new HashSet<>(
+        em.createNamedQuery("getMappingUserIdsByRoleAndUserIds", String.class)
+            .setParameter("role", role)
+            .setParameter("ids", ids)
+            .getResultList());
+  }
+
   UserOrganizationRoleMappingEntity getByUser(UserModel user) {
     TypedQuery<UserOrganizationRoleMappingEntity> query =
         em.createNamedQuery("getMappingByRoleAndUser", UserOrganizationRoleMappingEntity.class);
@@ -0,0 +1,64 @@
+package io.phasetwo.service.model.jpa;
+
+import com.google.common.collect.Lists;
+import jakarta.persistence.EntityManager;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.jpa.entities.UserEntity;
+
+/**
+ * Resolves lists of user ids to users with a few queries per chunk, instead of one lookup per
+ * user. Each chunk of users, with the attributes and required actions that are read when
+ * converting users to representations, is first fetched into the persistence context. The users
+ * are then looked up through the user provider as usual, so that they go through the user cache
+ * and any provider decorators, and lookups of local users that aren't cached are answered from the
+ * persistence context.
+ */
+public class UserBatchLoader {
+
+  static final int CHUNK_SIZE = 500;
+
+  private final KeycloakSession session;
+  private final RealmModel realm;
+  private final EntityManager em;
+
+  public UserBatchLoader(KeycloakSession session, RealmModel realm, EntityManager em) {
+    this.session = session;
+    this.realm = realm;
+    this.em = em;
+  }
+
+  /**
+   * @param ids The user ids
+   * @return The users, in the order of the ids. Ids of users that don't exist are skipped. Chunks
+   *     are loaded as the stream is consumed.
+   */
+  public Stream<UserModel> getUsersStream(List<String> ids) {
+    return Lists.partition(ids, CHUNK_SIZE).stream()
+        .flatMap(this::loadChunk)
+        .filter(Objects::nonNull);
+  }
+
+  private Stream<UserModel> loadChunk(List<String> ids) {
+    List<UserEntity> entities =
+        em.createQuery(
+                "SELECT DISTINCT u FROM UserEntity u LEFT JOIN FETCH u.attributes WHERE u.realmId = :realmId AND u.id IN :ids",
+                UserEntity.class)
+            .setParameter("realmId", realm.getId())
+            .setParameter("ids", ids)
+            .getResultList();
+    if (!entities.isEmpty()) {
+      // initializes the required actions of the entities already in the persistence context
+      em.createQuery(
+              "SELECT DISTINCT u FROM UserEntity u LEFT JOIN FETCH u.requiredActions WHERE u IN :users",
+              UserEntity.class)
+          .setParameter("users", entities)
+          .getResultList();
+    }
+    return ids.stream().map(id -> session.users().getUserById(realm, id));
+  }
+}
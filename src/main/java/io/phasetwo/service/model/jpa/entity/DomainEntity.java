@@ -12,6 +12,13 @@ import jakarta.persistence.*;
       name = "getVerifiedDomainsByName",
       query =
           "SELECT t FROM DomainEntity t WHERE t.domain = :domain AND t.verified = :verified AND t.organization.realmId = :realmId"),
+  @NamedQuery(
+      name = "getDomainsByNames",
+      query =
+          "SELECT t FROM DomainEntity t WHERE t.domain IN :domains AND t.organization.realmId = :realmId"),
+  @NamedQuery(
+      name = "getDomainsByRealm",
+      query = "SELECT t FROM DomainEntity t WHERE t.organization.realmId = :realmId"),
   @NamedQuery(
       name = "getDomainsByOrganization",
       query = "SELECT t FROM DomainEntity t WHERE t.organization = :organization"),
@@ -20,10 +20,30 @@ import java.util.Set;
       name = "getInvitationsByOrganizationAndEmail",
       query =
           "SELECT t FROM InvitationEntity t WHERE t.organization = :organization AND lower(t.email) LIKE lower(:search) ORDER BY t.email"),
+  @NamedQuery(
+      name = "getInvitationsByOrganizationAndExactEmail",
+      query =
+          "SELECT t FROM InvitationEntity t WHERE t.organization = :organization AND t.email = :email"),
+  @NamedQuery(
+      name = "getInvitationEmailsByOrganizationAndEmails",
+      query =
+          "SELECT DISTINCT t.email FROM InvitationEntity t WHERE t.organization = :organization AND t.email IN :emails"),
+  @NamedQuery(
+      name = "getInvitationsByOrganizationAndEmails",
+      query =
+          "SELECT t FROM InvitationEntity t WHERE t.organization = :organization AND t.email IN :emails"),
   @NamedQuery(
       name = "getInvitationsByRealmAndEmail",
       query =
-          "SELECT i FROM InvitationEntity i WHERE i.organization in (SELECT o FROM OrganizationEntity o WHERE o.realmId = :realmId) AND lower(i.email) = lower(:search) ORDER BY i.createdAt"),
+          "SELECT i FROM InvitationEntity i WHERE i.organization.realmId = :realmId AND i.email = lower(:search) ORDER BY i.createdAt"),
+  @NamedQuery(
+      name = "getInvitationIdsByRealmAndExactEmail",
+      query =
+          "SELECT i.id FROM InvitationEntity i WHERE i.organization.realmId = :realmId AND i.email = :email"),
+  @NamedQuery(
+      name = "getInvitationEmailsByRealm",
+      query =
+          "SELECT DISTINCT lower(i.email) FROM InvitationEntity i WHERE i.organization.realmId = :realmId"),
   @NamedQuery(
       name = "getInvitationCount",
       query = "select count(t) from InvitationEntity t where t.organization = :organization")
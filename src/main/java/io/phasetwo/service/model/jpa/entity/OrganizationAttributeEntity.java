@@ -50,6 +50,15 @@ public class OrganizationAttributeEntity {
   @Column(name = "VALUE")
   protected String value;
 
+  // lowercased copies of the name and value, kept in sync by their setters, so that
+  // case-insensitive attribute searches can use an index
+  @Column(name = "NAME_LOWER_CASE")
+  protected String nameLowerCase;
+
+  @Nationalized
+  @Column(name = "VALUE_LOWER_CASE")
+  protected String valueLowerCase;
+
   public String getId() {
     return id;
   }
@@ -64,6 +73,7 @@ public class OrganizationAttributeEntity {
 
   public void setName(String name) {
     this.name = name;
+    this.nameLowerCase = name == null ? null : name.toLowerCase();
   }
 
   public String getValue() {
@@ -72,6 +82,15 @@ public class OrganizationAttributeEntity {
 
   public void setValue(String value) {
     this.value = value;
+    this.valueLowerCase = value == null ? null : value.toLowerCase();
+  }
+
+  public String getNameLowerCase() {
+    return nameLowerCase;
+  }
+
+  public String getValueLowerCase() {
+    return valueLowerCase;
   }
 
   public OrganizationEntity getOrganization() {
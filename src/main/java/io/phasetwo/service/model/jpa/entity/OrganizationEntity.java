@@ -5,6 +5,7 @@ import static io.phasetwo.service.model.jpa.entity.Entities.setCollection;
 import jakarta.persistence.*;
 import java.util.ArrayList;
 import java.util.Collection;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.Nationalized;
 
 // import org.hibernate.validator.constraints.URL; todo
@@ -65,9 +66,11 @@ public class OrganizationEntity {
       cascade = CascadeType.ALL,
       orphanRemoval = true,
       mappedBy = "organization")
+  @BatchSize(size = 100)
   protected Collection<DomainEntity> domains = new ArrayList<DomainEntity>();
 
   @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true, mappedBy = "organization")
+  @BatchSize(size = 100)
   protected Collection<OrganizationAttributeEntity> attributes =
       new ArrayList<OrganizationAttributeEntity>();
 
@@ -84,6 +87,7 @@ public class OrganizationEntity {
       cascade = CascadeType.ALL,
       orphanRemoval = true,
       mappedBy = "organization")
+  @BatchSize(size = 100)
   protected Collection<OrganizationRoleEntity> roles = new ArrayList<OrganizationRoleEntity>();
 
   @OneToMany(
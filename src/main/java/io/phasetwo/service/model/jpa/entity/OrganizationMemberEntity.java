@@ -28,13 +28,41 @@ import java.util.Objects;
       name = "getOrganizationMembers",
       query =
           "SELECT m FROM OrganizationMemberEntity m WHERE m.organization = :organization ORDER BY m.createdAt"),
+  @NamedQuery(
+      name = "getUserIdsByOrganization",
+      query =
+          "SELECT m.userId FROM OrganizationMemberEntity m WHERE m.organization = :organization ORDER BY m.createdAt"),
+  @NamedQuery(
+      name = "searchOrganizationMemberUserIds",
+      query =
+          "SELECT m.userId FROM OrganizationMemberEntity m, UserEntity u WHERE m.organization = :organization AND u.id = m.userId AND u.serviceAccountClientLink IS NULL AND (lower(u.email) LIKE lower(:search) OR lower(u.username) LIKE lower(:search) OR lower(u.firstName) LIKE lower(:search) OR lower(u.lastName) LIKE lower(:search)) ORDER BY m.createdAt"),
   @NamedQuery(
       name = "getOrganizationMemberByUserId",
       query =
           "SELECT m FROM OrganizationMemberEntity m WHERE m.organization = :organization AND m.userId = :id"),
   @NamedQuery(
       name = "getOrganizationMembershipsByUserId",
-      query = "SELECT m FROM OrganizationMemberEntity m WHERE m.userId = :id")
+      query = "SELECT m FROM OrganizationMemberEntity m WHERE m.userId = :id"),
+  @NamedQuery(
+      name = "getOrganizationMemberUserIdsByUserIds",
+      query =
+          "SELECT m.userId FROM OrganizationMemberEntity m WHERE m.organization = :organization AND m.userId IN :ids"),
+  @NamedQuery(
+      name = "deleteOrganizationMembersByUserIds",
+      query =
+          "DELETE FROM OrganizationMemberEntity m WHERE m.organization = :organization AND m.userId IN :ids"),
+  @NamedQuery(
+      name = "getOrganizationMemberEmailsByEmails",
+      query =
+          "SELECT u.email FROM OrganizationMemberEntity m, UserEntity u WHERE m.organization = :organization AND u.id = m.userId AND u.email IN :emails"),
+  @NamedQuery(
+      name = "getOrganizationRoleMappingsByUserIds",
+      query =
+          "SELECT m.userId, r, um FROM OrganizationMemberEntity m JOIN m.organization o LEFT JOIN o.roles r LEFT JOIN r.userMappings um ON um.userId = m.userId WHERE m.organization = :organization AND m.userId IN :ids"),
+  @NamedQuery(
+      name = "getOrganizationRolesByUserId",
+      query =
+          "SELECT o.id, r.name, um.id FROM OrganizationMemberEntity m JOIN m.organization o LEFT JOIN o.roles r LEFT JOIN r.userMappings um ON um.userId = m.userId WHERE m.userId = :id AND o.realmId = :realmId ORDER BY m.createdAt")
 })
 @Table(
     name = "ORGANIZATION_MEMBER",
@@ -32,9 +32,25 @@ import java.util.Objects;
       name = "getMappingByRoleAndUser",
       query =
           "SELECT m FROM UserOrganizationRoleMappingEntity m WHERE m.userId = :userId AND m.role = :role"),
+  @NamedQuery(
+      name = "getMappingUserIdsByRoleAndUserIds",
+      query =
+          "SELECT m.userId FROM UserOrganizationRoleMappingEntity m WHERE m.role = :role AND m.userId IN :ids"),
+  @NamedQuery(
+      name = "deleteMappingsByRoleAndUsers",
+      query =
+          "DELETE FROM UserOrganizationRoleMappingEntity m WHERE m.role = :role AND m.userId IN :ids"),
   @NamedQuery(
       name = "getMappingsByUser",
       query = "SELECT m FROM UserOrganizationRoleMappingEntity m WHERE m.userId = :userId"),
+  @NamedQuery(
+      name = "deleteMappingsByOrganizationAndUsers",
+      query =
+          "DELETE FROM UserOrganizationRoleMappingEntity m WHERE m.userId IN :ids AND m.role IN (SELECT r FROM OrganizationRoleEntity r WHERE r.organization = :organization)"),
+  @NamedQuery(
+      name = "getMappingsByOrganizationAndUser",
+      query =
+          "SELECT m FROM UserOrganizationRoleMappingEntity m WHERE m.userId = :userId AND m.role.organization = :organization"),
   @NamedQuery(
       name = "deleteMappingsByRoleAndUser",
       query =
@@ -1,8 +1,13 @@
 package io.phasetwo.service.protocol.oidc.mappers;
 
+import io.phasetwo.service.model.OrganizationModel;
+import io.phasetwo.service.util.ActiveOrganization;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 import lombok.extern.jbosslog.JBossLog;
+import org.keycloak.models.AuthenticatedClientSessionModel;
 import org.keycloak.models.ClientSessionContext;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.ProtocolMapperModel;
@@ -14,6 +19,7 @@ import org.keycloak.protocol.oidc.mappers.OIDCAccessTokenMapper;
 import org.keycloak.protocol.oidc.mappers.OIDCAttributeMapperHelper;
 import org.keycloak.protocol.oidc.mappers.OIDCIDTokenMapper;
 import org.keycloak.protocol.oidc.mappers.UserInfoTokenMapper;
+import org.keycloak.provider.Provider;
 import org.keycloak.provider.ProviderConfigProperty;
 import org.keycloak.representations.AccessTokenResponse;
 import org.keycloak.representations.IDToken;
@@ -22,6 +28,15 @@ import org.keycloak.representations.IDToken;
 public abstract class AbstractOrganizationMapper extends AbstractOIDCProtocolMapper
     implements OIDCAccessTokenMapper, OIDCIDTokenMapper, UserInfoTokenMapper {
 
+  public static final String ACTIVE_ORGANIZATION_ONLY = "active.organization.only";
+  public static final String CLIENT_ORGANIZATION_ATTRIBUTE = "client.organization.attribute";
+  public static final String MAX_ORGANIZATIONS = "max.organizations";
+
+  private static final String USER_ORGANIZATIONS_ATTRIBUTE = "orgs.mapper.user.organizations.";
+  private static final String SESSION_STATS_ATTRIBUTE = "orgs.mapper.user.organizations.stats";
+  private static final AtomicLong userOrganizationsHits = new AtomicLong();
+  private static final AtomicLong userOrganizationsMisses = new AtomicLong();
+
   AbstractOrganizationMapper(
       String providerId,
       String displayType,
@@ -66,8 +81,161 @@ public abstract class AbstractOrganizationMapper extends AbstractOIDCProtocolMap
     return helpText;
   }
 
+  /** Add the config properties that limit which of the user's organizations are in the claim. */
+  protected static void addOrganizationScopeConfig(List<ProviderConfigProperty> configProperties) {
+    ProviderConfigProperty property = new ProviderConfigProperty();
+    property.setName(ACTIVE_ORGANIZATION_ONLY);
+    property.setLabel("Active organization only");
+    property.setHelpText("Only include the user's active organization.");
+    property.setType(ProviderConfigProperty.BOOLEAN_TYPE);
+    property.setDefaultValue("false");
+    configProperties.add(property);
+
+    property = new ProviderConfigProperty();
+    property.setName(CLIENT_ORGANIZATION_ATTRIBUTE);
+    property.setLabel("Client organization attribute");
+    property.setHelpText(
+        "Only include organizations that have the requesting client's id among the values of "
+            + "this organization attribute. Leave empty to include organizations for all clients.");
+    property.setType(ProviderConfigProperty.STRING_TYPE);
+    configProperties.add(property);
+
+    property = new ProviderConfigProperty();
+    property.setName(MAX_ORGANIZATIONS);
+    property.setLabel("Maximum organizations");
+    property.setHelpText(
+        "Maximum number of organizations to include, in the order the user joined them. "
+            + "Leave empty or 0 for no limit.");
+    property.setType(ProviderConfigProperty.STRING_TYPE);
+    configProperties.add(property);
+  }
+
+  /**
+   * Get the user's organizations that should be in the claim, as limited by the mapper's active
+   * organization, client and maximum settings. Only the organizations that pass are loaded.
+   */
+  protected Stream<OrganizationModel> getOrganizationsStream(
+      KeycloakSession session,
+      RealmModel realm,
+      UserModel user,
+      ProtocolMapperModel mappingModel,
+      ClientSessionContext clientSessionCtx) {
+    Map<String, String> config = mappingModel.getConfig();
+    UserOrganizations orgs = getUserOrganizations(session, realm, user);
+
+    Stream<OrganizationModel> stream;
+    if (Boolean.parseBoolean(config.get(ACTIVE_ORGANIZATION_ONLY))) {
+      ActiveOrganization active =
+          new ActiveOrganization(session, realm, user, orgs.getOrganizationRoles());
+      stream = active.isValid() ? Stream.of(active.getActiveOrganization()) : Stream.empty();
+    } else {
+      stream = orgs.getOrganizationsStream();
+    }
+
+    String attribute = config.get(CLIENT_ORGANIZATION_ATTRIBUTE);
+    if (attribute != null && !attribute.isBlank()) {
+      String clientId = getClientId(clientSessionCtx);
+      stream =
+          stream.filter(
+              o -> {
+                List<String> clients = o.getAttributes().get(attribute);
+                return clientId != null && clients != null && clients.contains(clientId);
+              });
+    }
+
+    int max = getMaxOrganizations(config);
+    if (max > 0) stream = stream.limit(max);
+    return stream;
+  }
+
+  private static String getClientId(ClientSessionContext clientSessionCtx) {
+    if (clientSessionCtx == null) return null;
+    AuthenticatedClientSessionModel clientSession = clientSessionCtx.getClientSession();
+    if (clientSession == null || clientSession.getClient() == null) return null;
+    return clientSession.getClient().getClientId();
+  }
+
+  private static int getMaxOrganizations(Map<String, String> config) {
+    String max = config.get(MAX_ORGANIZATIONS);
+    if (max == null || max.isBlank()) return 0;
+    try {
+      return Integer.parseInt(max.trim());
+    } catch (NumberFormatException e) {
+      log.warnf("Invalid %s value %s. Not limiting organizations.", MAX_ORGANIZATIONS, max);
+      return 0;
+    }
+  }
+
+  /**
+   * Get the user's organizations and roles. They are computed once per session and then shared by
+   * all organization mappers, for the ID token, access token and userinfo alike.
+   */
+  protected UserOrganizations getUserOrganizations(
+      KeycloakSession session, RealmModel realm, UserModel user) {
+    String key = USER_ORGANIZATIONS_ATTRIBUTE + realm.getId() + "." + user.getId();
+    UserOrganizations orgs = session.getAttribute(key, UserOrganizations.class);
+    SessionStats stats = getSessionStats(session);
+    if (orgs != null) {
+      userOrganizationsHits.incrementAndGet();
+      stats.hits++;
+      log.tracef("reusing organizations of user %s for the session", user.getUsername());
+      return orgs;
+    }
+    userOrganizationsMisses.incrementAndGet();
+    stats.misses++;
+    orgs = UserOrganizations.load(session, realm, user);
+    session.setAttribute(key, orgs);
+    log.debugf("loaded organizations for user %s", user.getUsername());
+    return orgs;
+  }
+
+  /** Number of times a mapper reused the organizations already computed for the session. */
+  public static long getUserOrganizationsHits() {
+    return userOrganizationsHits.get();
+  }
+
+  /** Number of times a mapper had to compute the user's organizations. */
+  public static long getUserOrganizationsMisses() {
+    return userOrganizationsMisses.get();
+  }
+
+  /** Fraction of mapper invocations served from the session, between 0 and 1. */
+  public static double getUserOrganizationsHitRate() {
+    long hits = userOrganizationsHits.get();
+    long total = hits + userOrganizationsMisses.get();
+    return total == 0 ? 0d : (double) hits / total;
+  }
+
+  private static SessionStats getSessionStats(KeycloakSession session) {
+    SessionStats stats = session.getAttribute(SESSION_STATS_ATTRIBUTE, SessionStats.class);
+    if (stats == null) {
+      stats = new SessionStats();
+      session.setAttribute(SESSION_STATS_ATTRIBUTE, stats);
+      session.enlistForClose(stats);
+    }
+    return stats;
+  }
+
+  /** The mapper hits and misses of a session, logged at debug level when the session closes. */
+  private static class SessionStats implements Provider {
+    private int hits;
+    private int misses;
+
+    @Override
+    public void close() {
+      log.debugf(
+          "organization mappers reused the user's organizations %d times and loaded them %d times "
+              + "in the session. hit rate %.2f overall",
+          hits, misses, getUserOrganizationsHitRate());
+    }
+  }
+
   protected abstract Map<String, Object> getOrganizationClaim(
-      KeycloakSession session, RealmModel realm, UserModel user, ProtocolMapperModel mapperModel);
+      KeycloakSession session,
+      RealmModel realm,
+      UserModel user,
+      ProtocolMapperModel mapperModel,
+      ClientSessionContext clientSessionCtx);
 
   @Override
   protected void setClaim(
@@ -79,7 +247,11 @@ public abstract class AbstractOrganizationMapper extends AbstractOIDCProtocolMap
     log.debugf("adding org claim to idToken for %s", userSession.getUser().getUsername());
     Object claim =
         getOrganizationClaim(
-            keycloakSession, userSession.getRealm(), userSession.getUser(), mappingModel);
+            keycloakSession,
+            userSession.getRealm(),
+            userSession.getUser(),
+            mappingModel,
+            clientSessionCtx);
     if (claim == null) return;
     OIDCAttributeMapperHelper.mapClaim(token, mappingModel, claim);
   }
@@ -95,7 +267,11 @@ public abstract class AbstractOrganizationMapper extends AbstractOIDCProtocolMap
     UserModel user = userSession.getUser();
     Object claim =
         getOrganizationClaim(
-            keycloakSession, userSession.getRealm(), userSession.getUser(), mappingModel);
+            keycloakSession,
+            userSession.getRealm(),
+            userSession.getUser(),
+            mappingModel,
+            clientSessionCtx);
     if (claim == null) return;
     OIDCAttributeMapperHelper.mapClaim(accessTokenResponse, mappingModel, claim);
   }
@@ -8,6 +8,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import lombok.extern.jbosslog.JBossLog;
+import org.keycloak.models.ClientSessionContext;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.ProtocolMapperModel;
 import org.keycloak.models.RealmModel;
@@ -59,9 +60,18 @@ public class ActiveOrganizationMapper extends AbstractOrganizationMapper {
   */
   @Override
   protected Map<String, Object> getOrganizationClaim(
-      KeycloakSession session, RealmModel realm, UserModel user, ProtocolMapperModel mappingModel) {
-
-    ActiveOrganization activeOrganizationUtil = new ActiveOrganization(session, realm, user);
+      KeycloakSession session,
+      RealmModel realm,
+      UserModel user,
+      ProtocolMapperModel mappingModel,
+      ClientSessionContext clientSessionCtx) {
+
+    ActiveOrganization activeOrganizationUtil =
+        new ActiveOrganization(
+            session,
+            realm,
+            user,
+            getUserOrganizations(session, realm, user).getOrganizationRoles());
 
     if (!activeOrganizationUtil.isValid()) {
       return Maps.newHashMap();
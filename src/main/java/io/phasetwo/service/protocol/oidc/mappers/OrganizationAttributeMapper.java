@@ -3,10 +3,10 @@ package io.phasetwo.service.protocol.oidc.mappers;
 import com.google.auto.service.AutoService;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import io.phasetwo.service.model.OrganizationProvider;
 import java.util.List;
 import java.util.Map;
 import lombok.extern.jbosslog.JBossLog;
+import org.keycloak.models.ClientSessionContext;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.ProtocolMapperModel;
 import org.keycloak.models.RealmModel;
@@ -24,6 +24,7 @@ public class OrganizationAttributeMapper extends AbstractOrganizationMapper {
   private static final List<ProviderConfigProperty> configProperties = Lists.newArrayList();
 
   static {
+    addOrganizationScopeConfig(configProperties);
     OIDCAttributeMapperHelper.addAttributeConfig(
         configProperties, OrganizationAttributeMapper.class);
   }
@@ -39,10 +40,13 @@ public class OrganizationAttributeMapper extends AbstractOrganizationMapper {
 
   @Override
   protected Map<String, Object> getOrganizationClaim(
-      KeycloakSession session, RealmModel realm, UserModel user, ProtocolMapperModel mappingModel) {
-    OrganizationProvider orgs = session.getProvider(OrganizationProvider.class);
+      KeycloakSession session,
+      RealmModel realm,
+      UserModel user,
+      ProtocolMapperModel mappingModel,
+      ClientSessionContext clientSessionCtx) {
     Map<String, Object> claim = Maps.newHashMap();
-    orgs.getUserOrganizationsStream(realm, user)
+    getOrganizationsStream(session, realm, user, mappingModel, clientSessionCtx)
         .forEach(
             o -> {
               Map<String, Object> org = Maps.newHashMap();
@@ -3,10 +3,11 @@ package io.phasetwo.service.protocol.oidc.mappers;
 import com.google.auto.service.AutoService;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import io.phasetwo.service.model.OrganizationProvider;
+import io.phasetwo.service.resource.OrganizationAdminAuth;
 import java.util.List;
 import java.util.Map;
 import lombok.extern.jbosslog.JBossLog;
+import org.keycloak.models.ClientSessionContext;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.ProtocolMapperModel;
 import org.keycloak.models.RealmModel;
@@ -20,10 +21,31 @@ import org.keycloak.provider.ProviderConfigProperty;
 public class OrganizationRoleMapper extends AbstractOrganizationMapper {
 
   public static final String PROVIDER_ID = "oidc-organization-role-mapper";
+  public static final String COMPACT_ROLES = "compact.roles";
+  public static final String INCLUDE_ORGANIZATION_NAME = "include.organization.name";
 
   private static final List<ProviderConfigProperty> configProperties = Lists.newArrayList();
 
   static {
+    ProviderConfigProperty property = new ProviderConfigProperty();
+    property.setName(COMPACT_ROLES);
+    property.setLabel("Compact roles");
+    property.setHelpText(
+        "Encode the default organization roles as a bitmask (r) and list only custom roles by "
+            + "name (c), to keep tokens small for users in many organizations.");
+    property.setType(ProviderConfigProperty.BOOLEAN_TYPE);
+    property.setDefaultValue("false");
+    configProperties.add(property);
+
+    property = new ProviderConfigProperty();
+    property.setName(INCLUDE_ORGANIZATION_NAME);
+    property.setLabel("Include organization name");
+    property.setHelpText("Include the name of each organization in the claim.");
+    property.setType(ProviderConfigProperty.BOOLEAN_TYPE);
+    property.setDefaultValue("true");
+    configProperties.add(property);
+
+    addOrganizationScopeConfig(configProperties);
     OIDCAttributeMapperHelper.addAttributeConfig(configProperties, OrganizationRoleMapper.class);
   }
 
@@ -44,24 +66,33 @@ public class OrganizationRoleMapper extends AbstractOrganizationMapper {
      bar: []
    ]
    gets all the roles for each organization of which the user is a member
+
+   in compact mode, each organization is { "n": "foo", "r": 3, "c": [ "admin" ] }
   */
   @Override
   protected Map<String, Object> getOrganizationClaim(
-      KeycloakSession session, RealmModel realm, UserModel user, ProtocolMapperModel mappingModel) {
-    OrganizationProvider orgs = session.getProvider(OrganizationProvider.class);
+      KeycloakSession session,
+      RealmModel realm,
+      UserModel user,
+      ProtocolMapperModel mappingModel,
+      ClientSessionContext clientSessionCtx) {
+    boolean compact = Boolean.parseBoolean(mappingModel.getConfig().get(COMPACT_ROLES));
+    boolean includeName =
+        !"false".equalsIgnoreCase(mappingModel.getConfig().get(INCLUDE_ORGANIZATION_NAME));
+    UserOrganizations orgs = getUserOrganizations(session, realm, user);
     Map<String, Object> claim = Maps.newHashMap();
-    orgs.getUserOrganizationsStream(realm, user)
+    getOrganizationsStream(session, realm, user, mappingModel, clientSessionCtx)
         .forEach(
             o -> {
-              List<String> roles = Lists.newArrayList();
-              o.getRolesStream()
-                  .forEach(
-                      r -> {
-                        if (r.hasRole(user)) roles.add(r.getName());
-                      });
-              Map<String, Object> org = Maps.newHashMap();
-              org.put("name", o.getName());
-              org.put("roles", roles);
+              Map<String, Object> org;
+              if (compact) {
+                org = OrganizationAdminAuth.encodeCompactRoles(orgs.getRoles(o.getId()));
+                if (includeName) org.put(OrganizationAdminAuth.COMPACT_NAME, o.getName());
+              } else {
+                org = Maps.newHashMap();
+                if (includeName) org.put("name", o.getName());
+                org.put("roles", Lists.newArrayList(orgs.getRoles(o.getId())));
+              }
               claim.put(o.getId(), org);
             });
     log.debugf("created user %s claim %s", user.getUsername(), claim);
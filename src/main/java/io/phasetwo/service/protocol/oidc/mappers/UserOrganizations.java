@@ -0,0 +1,63 @@
+package io.phasetwo.service.protocol.oidc.mappers;
+
+import com.google.common.collect.ImmutableSet;
+import io.phasetwo.service.model.OrganizationModel;
+import io.phasetwo.service.model.OrganizationProvider;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+
+/**
+ * Snapshot of a user's organizations and their roles in each. Computed once per session and
+ * shared by the organization mappers for every token they contribute to. Organizations are only
+ * loaded when a mapper asks for them, so a claim limited to a few of them stays cheap.
+ */
+public class UserOrganizations {
+
+  private final OrganizationProvider provider;
+  private final RealmModel realm;
+  private final Map<String, Set<String>> roles;
+  private final Map<String, Optional<OrganizationModel>> organizations = new HashMap<>();
+
+  UserOrganizations(
+      OrganizationProvider provider, RealmModel realm, Map<String, Set<String>> roles) {
+    this.provider = provider;
+    this.realm = realm;
+    this.roles = roles;
+  }
+
+  static UserOrganizations load(KeycloakSession session, RealmModel realm, UserModel user) {
+    OrganizationProvider orgs = session.getProvider(OrganizationProvider.class);
+    return new UserOrganizations(
+        orgs, realm, Collections.unmodifiableMap(orgs.getUserOrganizationRoles(realm, user)));
+  }
+
+  /** The user's organizations, in the order they became a member. */
+  public Stream<OrganizationModel> getOrganizationsStream() {
+    return roles.keySet().stream().map(this::getOrganization).filter(Objects::nonNull);
+  }
+
+  /** The organization, if the user is a member of it and it still exists. */
+  public OrganizationModel getOrganization(String orgId) {
+    if (!roles.containsKey(orgId)) return null;
+    return organizations
+        .computeIfAbsent(orgId, id -> Optional.ofNullable(provider.getOrganizationById(realm, id)))
+        .orElse(null);
+  }
+
+  /** Organization ids mapped to the names of the roles the user has been granted in each. */
+  public Map<String, Set<String>> getOrganizationRoles() {
+    return roles;
+  }
+
+  public Set<String> getRoles(String orgId) {
+    return roles.getOrDefault(orgId, ImmutableSet.of());
+  }
+}
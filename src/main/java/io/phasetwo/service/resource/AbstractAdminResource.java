@@ -34,6 +34,9 @@ import org.keycloak.services.resources.admin.permissions.AdminPermissions;
 @NoCache
 public abstract class AbstractAdminResource<T extends AdminAuth> {
 
+  /** Response header with the cursor of the next page, for listings with keyset pagination. */
+  public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
   protected final ClientConnection connection;
   protected final HttpHeaders headers;
   protected final KeycloakSession session;
@@ -77,7 +80,7 @@ public abstract class AbstractAdminResource<T extends AdminAuth> {
     Cors.add(request)
         .allowedOrigins(auth.getToken())
         .allowedMethods(CorsResource.METHODS)
-        .exposedHeaders("Location")
+        .exposedHeaders("Location", NEXT_CURSOR_HEADER)
         .auth()
         .build(response);
   }
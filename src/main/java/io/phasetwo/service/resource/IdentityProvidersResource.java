@@ -17,6 +17,8 @@ import java.util.Optional;
 import java.util.stream.Stream;
 import lombok.extern.jbosslog.JBossLog;
 import org.keycloak.models.IdentityProviderModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
 import org.keycloak.models.utils.ModelToRepresentation;
 import org.keycloak.models.utils.RepresentationToModel;
 import org.keycloak.models.utils.StripSecretsUtils;
@@ -51,9 +53,8 @@ public class IdentityProvidersResource extends OrganizationAdminResource {
   @GET
   @Produces(MediaType.APPLICATION_JSON)
   public Stream<IdentityProviderRepresentation> getIdentityProviders() {
-    return realm
+    return organization
         .getIdentityProvidersStream()
-        .filter(provider -> idpInOrg(provider))
         .map(
             provider ->
                 StripSecretsUtils.strip(ModelToRepresentation.toRepresentation(realm, provider)));
@@ -86,9 +87,8 @@ public class IdentityProvidersResource extends OrganizationAdminResource {
     // Organization can have only one active idp
     // Activating an idp deactivates all others
     if (representation.isEnabled()) {
-      realm
+      organization
           .getIdentityProvidersStream()
-          .filter(provider -> idpInOrg(provider))
           .forEach(
               provider -> {
                 provider.setEnabled(false);
@@ -133,6 +133,7 @@ public class IdentityProvidersResource extends OrganizationAdminResource {
 
     Response resp = getIdpResource().create(representation);
     if (resp.getStatus() == Response.Status.CREATED.getStatusCode()) {
+      identityProvidersChanged();
       return createdResponse(representation);
     } else {
       return resp;
@@ -207,9 +208,27 @@ public class IdentityProvidersResource extends OrganizationAdminResource {
     return getIdpResource().importFrom();
   }
 
-  private boolean idpInOrg(IdentityProviderModel provider) {
-    return (provider.getConfig().containsKey(ORG_OWNER_CONFIG_KEY)
-        && organization.getId().equals(provider.getConfig().get(ORG_OWNER_CONFIG_KEY)));
+  // creating an idp doesn't send a keycloak event, so the org idp index is told here
+  private void identityProvidersChanged() {
+    session
+        .getKeycloakSessionFactory()
+        .publish(
+            new OrganizationModel.OrganizationIdentityProvidersChangedEvent() {
+              @Override
+              public OrganizationModel getOrganization() {
+                return organization;
+              }
+
+              @Override
+              public KeycloakSession getKeycloakSession() {
+                return session;
+              }
+
+              @Override
+              public RealmModel getRealm() {
+                return realm;
+              }
+            });
   }
 
   private org.keycloak.services.resources.admin.IdentityProvidersResource getIdpResource() {
@@ -8,6 +8,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import io.phasetwo.service.model.InvitationModel;
 import io.phasetwo.service.model.OrganizationModel;
+import io.phasetwo.service.model.OrganizationProvider;
+import io.phasetwo.service.representation.BulkResponseItem;
 import io.phasetwo.service.representation.Invitation;
 import io.phasetwo.service.representation.InvitationRequest;
 import jakarta.mail.internet.AddressException;
@@ -18,7 +20,11 @@ import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import java.lang.reflect.Method;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -27,12 +33,17 @@ import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import lombok.extern.jbosslog.JBossLog;
+import org.keycloak.email.EmailException;
+import org.keycloak.email.EmailSenderProvider;
 import org.keycloak.email.EmailTemplateProvider;
 import org.keycloak.email.freemarker.FreeMarkerEmailTemplateProvider;
 import org.keycloak.email.freemarker.beans.ProfileBean;
 import org.keycloak.events.admin.OperationType;
+import org.keycloak.executors.ExecutorsProvider;
+import org.keycloak.models.AbstractKeycloakTransaction;
 import org.keycloak.models.Constants;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.utils.KeycloakModelUtils;
@@ -40,6 +51,8 @@ import org.keycloak.models.utils.KeycloakModelUtils;
 @JBossLog
 public class InvitationsResource extends OrganizationAdminResource {
 
+  static final String EMAIL_EXECUTOR = "org-invitation-emails";
+
   private final OrganizationModel organization;
 
   public InvitationsResource(OrganizationAdminResource parent, OrganizationModel organization) {
@@ -66,7 +79,7 @@ public class InvitationsResource extends OrganizationAdminResource {
 
     String link = Optional.ofNullable(invitation.getRedirectUri()).orElse("");
 
-    if (organization.getInvitationsByEmail(email).count() > 0) {
+    if (!organization.getInvitedEmails(List.of(email)).isEmpty()) {
       log.infof(
           "invitation for %s %s %s already exists. .",
           email, realm.getName(), organization.getId());
@@ -128,6 +141,199 @@ public class InvitationsResource extends OrganizationAdminResource {
     }
   }
 
+  @PUT
+  @Path("")
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response createInvitations(List<InvitationRequest> invitations) {
+    requireBody(invitations);
+    log.debugf(
+        "Create %d invitations for %s %s",
+        invitations.size(), realm.getName(), organization.getId());
+    canManage();
+
+    Set<String> orgRoles =
+        organization.getRolesStream().map(r -> r.getName()).collect(Collectors.toSet());
+    List<String> emails =
+        invitations.stream()
+            .map(InvitationRequest::getEmail)
+            .filter(e -> e != null && isValidEmail(e))
+            .map(String::toLowerCase)
+            .collect(Collectors.toList());
+    Set<String> invited = new HashSet<>(organization.getInvitedEmails(emails));
+    Set<String> members = organization.getMemberEmails(emails);
+
+    List<BulkResponseItem> responseItems = new ArrayList<>();
+    Map<String, BulkResponseItem> itemsByEmail = new HashMap<>();
+    Map<String, UserModel> inviters = new LinkedHashMap<>();
+    Map<String, InvitationRequest> requests = new HashMap<>();
+    Map<String, UserModel> invitersById = new HashMap<>();
+    for (InvitationRequest invitation : invitations) {
+      String email = invitation.getEmail();
+      BulkResponseItem item =
+          new BulkResponseItem().status(Response.Status.CREATED.getStatusCode()).item(email);
+      responseItems.add(item);
+      UserModel inviter = auth.getUser();
+      if (!Strings.isNullOrEmpty(invitation.getInviterId())) {
+        inviter =
+            invitersById.computeIfAbsent(
+                invitation.getInviterId(), id -> session.users().getUserById(realm, id));
+      }
+      if (email == null || !isValidEmail(email)) {
+        item.setStatus(Response.Status.BAD_REQUEST.getStatusCode());
+        item.setError("Invalid email: " + email);
+      } else if (invitation.getRoles() != null && !orgRoles.containsAll(invitation.getRoles())) {
+        item.setStatus(Response.Status.BAD_REQUEST.getStatusCode());
+        item.setError("Unknown role in list.");
+      } else if (inviter == null) {
+        item.setStatus(Response.Status.BAD_REQUEST.getStatusCode());
+        item.setError(String.format("Inviter %s doesn't exist", invitation.getInviterId()));
+      } else if (!invited.add(email.toLowerCase())) {
+        item.setStatus(Response.Status.CONFLICT.getStatusCode());
+        item.setError(String.format("Invitation for %s already exists.", email.toLowerCase()));
+      } else if (members.contains(email.toLowerCase())) {
+        item.setStatus(Response.Status.CONFLICT.getStatusCode());
+        item.setError(
+            String.format("%s is already a member of this organization.", email.toLowerCase()));
+      } else {
+        email = email.toLowerCase();
+        inviters.put(email, inviter);
+        requests.put(email, invitation);
+        itemsByEmail.put(email, item);
+      }
+    }
+
+    List<Invitation> created = new ArrayList<>();
+    Map<String, InvitationEmail> toSend = new LinkedHashMap<>();
+    organization
+        .addInvitations(
+            inviters,
+            i -> {
+              InvitationRequest invitation = requests.get(i.getEmail());
+              i.setUrl(Optional.ofNullable(invitation.getRedirectUri()).orElse(""));
+              if (invitation.getRoles() != null) i.setRoles(invitation.getRoles());
+              if (invitation.getAttributes() != null) {
+                invitation.getAttributes().forEach(i::setAttribute);
+              }
+            })
+        .forEach(
+            i -> {
+              Invitation o = convertInvitationModelToInvitation(i);
+              itemsByEmail.get(i.getEmail()).setItem(o);
+              created.add(o);
+              if (requests.get(i.getEmail()).isSend()) {
+                renderInvitationEmail(i).ifPresent(e -> toSend.put(i.getId(), e));
+              }
+            });
+
+    if (!created.isEmpty()) {
+      adminEvent
+          .resource(INVITATION.name())
+          .operation(OperationType.CREATE)
+          .resourcePath(session.getContext().getUri())
+          .representation(created)
+          .success();
+    }
+    if (!toSend.isEmpty()) sendInvitationEmailsAfterCommit(toSend);
+
+    return Response.status(207) // <-Multi-Status
+        .location(session.getContext().getUri().getAbsolutePathBuilder().build())
+        .entity(responseItems)
+        .build();
+  }
+
+  /**
+   * Renders the email for a new invitation while the request, which the templates take the URLs
+   * and locale from, is still available.
+   */
+  private Optional<InvitationEmail> renderInvitationEmail(InvitationModel invitation) {
+    UserModel inviter = Optional.ofNullable(invitation.getInviter()).orElse(user);
+    try {
+      return Optional.of(
+          renderInvitationEmail(
+              session,
+              realm,
+              organization,
+              user,
+              invitation.getEmail(),
+              inviter,
+              Optional.ofNullable(invitation.getUrl()).orElse(""),
+              invitation.getAttributes()));
+    } catch (Exception e) {
+      log.warnf(e, "Unable to render invitation email to %s", invitation.getEmail());
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Queues the rendered emails, by invitation id, once the transaction commits. They are sent on
+   * the executor so that the request doesn't wait on the mail server, each in its own short
+   * transaction, and the invitations revoked in the meantime are skipped.
+   */
+  private void sendInvitationEmailsAfterCommit(Map<String, InvitationEmail> emails) {
+    String realmId = realm.getId();
+    String orgId = organization.getId();
+    KeycloakSessionFactory factory = session.getKeycloakSessionFactory();
+    session
+        .getTransactionManager()
+        .enlistAfterCompletion(
+            new AbstractKeycloakTransaction() {
+              @Override
+              protected void commitImpl() {
+                session
+                    .getProvider(ExecutorsProvider.class)
+                    .getExecutor(EMAIL_EXECUTOR)
+                    .execute(() -> sendInvitationEmails(factory, realmId, orgId, emails));
+              }
+
+              @Override
+              protected void rollbackImpl() {}
+            });
+  }
+
+  private static void sendInvitationEmails(
+      KeycloakSessionFactory factory,
+      String realmId,
+      String orgId,
+      Map<String, InvitationEmail> emails) {
+    log.debugf("Sending %d invitation emails for %s %s", emails.size(), realmId, orgId);
+    emails.forEach(
+        (id, email) -> {
+          try {
+            KeycloakModelUtils.runJobInTransaction(
+                factory, s -> sendInvitationEmail(s, realmId, orgId, id, email));
+          } catch (Exception e) {
+            log.warnf(e, "Unable to send invitation email to %s", email.getAddress());
+          }
+        });
+  }
+
+  private static void sendInvitationEmail(
+      KeycloakSession session,
+      String realmId,
+      String orgId,
+      String invitationId,
+      InvitationEmail email) {
+    RealmModel realm = session.realms().getRealm(realmId);
+    if (realm == null) return;
+    session.getContext().setRealm(realm);
+    OrganizationModel organization =
+        session.getProvider(OrganizationProvider.class).getOrganizationById(realm, orgId);
+    if (organization == null || organization.getInvitation(invitationId) == null) return;
+    try {
+      session
+          .getProvider(EmailSenderProvider.class)
+          .send(
+              realm.getSmtpConfig(),
+              email.getAddress(),
+              email.getSubject(),
+              email.getTextBody(),
+              email.getHtmlBody());
+    } catch (EmailException e) {
+      log.warnf(e, "Unable to send invitation email to %s", email.getAddress());
+    }
+  }
+
   boolean canSetRoles(Collection<String> roles) {
     if (roles == null || roles.isEmpty()) return true;
     Set<String> orgRoles =
@@ -148,12 +354,47 @@ public class InvitationsResource extends OrganizationAdminResource {
       String link,
       Map<String, List<String>> attributes)
       throws Exception {
+    sendInvitationEmail(session, realm, organization, user, email, inviter, link, attributes);
+  }
+
+  static void sendInvitationEmail(
+      KeycloakSession session,
+      RealmModel realm,
+      OrganizationModel organization,
+      UserModel user,
+      String email,
+      UserModel inviter,
+      String link,
+      Map<String, List<String>> attributes)
+      throws Exception {
+    InvitationEmail rendered =
+        renderInvitationEmail(session, realm, organization, user, email, inviter, link, attributes);
+    session
+        .getProvider(EmailSenderProvider.class)
+        .send(
+            realm.getSmtpConfig(),
+            email,
+            rendered.getSubject(),
+            rendered.getTextBody(),
+            rendered.getHtmlBody());
+  }
+
+  static InvitationEmail renderInvitationEmail(
+      KeycloakSession session,
+      RealmModel realm,
+      OrganizationModel organization,
+      UserModel user,
+      String email,
+      UserModel inviter,
+      String link,
+      Map<String, List<String>> attributes)
+      throws Exception {
     EmailTemplateProvider emailTemplateProvider = session.getProvider(EmailTemplateProvider.class);
 
-    Method sendMethod =
+    Method processMethod =
         FreeMarkerEmailTemplateProvider.class.getDeclaredMethod(
-            "send", String.class, List.class, String.class, Map.class, String.class);
-    sendMethod.setAccessible(true);
+            "processTemplate", String.class, List.class, String.class, Map.class);
+    processMethod.setAccessible(true);
 
     String realmName =
         Strings.isNullOrEmpty(realm.getDisplayName()) ? realm.getName() : realm.getDisplayName();
@@ -177,11 +418,54 @@ public class InvitationsResource extends OrganizationAdminResource {
 
     emailTemplateProvider.setRealm(realm).setUser(user).setAttribute("realmName", realmName);
 
-    sendMethod.invoke(
-        emailTemplateProvider, subjectKey, subjectAttributes, templateName, bodyAttributes, email);
+    Object template =
+        processMethod.invoke(
+            emailTemplateProvider, subjectKey, subjectAttributes, templateName, bodyAttributes);
+    return new InvitationEmail(
+        email,
+        getTemplateProperty(template, "getSubject"),
+        getTemplateProperty(template, "getTextBody"),
+        getTemplateProperty(template, "getHtmlBody"));
+  }
+
+  private static String getTemplateProperty(Object template, String getter) throws Exception {
+    Method method = template.getClass().getDeclaredMethod(getter);
+    method.setAccessible(true);
+    return (String) method.invoke(template);
+  }
+
+  /** An invitation email rendered from the theme's templates, ready to be sent. */
+  static final class InvitationEmail {
+    private final String address;
+    private final String subject;
+    private final String textBody;
+    private final String htmlBody;
+
+    InvitationEmail(String address, String subject, String textBody, String htmlBody) {
+      this.address = address;
+      this.subject = subject;
+      this.textBody = textBody;
+      this.htmlBody = htmlBody;
+    }
+
+    String getAddress() {
+      return address;
+    }
+
+    String getSubject() {
+      return subject;
+    }
+
+    String getTextBody() {
+      return textBody;
+    }
+
+    String getHtmlBody() {
+      return htmlBody;
+    }
   }
 
-  Optional<String> getInviterName(UserModel user) {
+  static Optional<String> getInviterName(UserModel user) {
     if (user == null) return Optional.empty();
     StringBuilder o = new StringBuilder();
     if (!Strings.isNullOrEmpty(user.getFirstName())) {
@@ -7,10 +7,20 @@ import static org.keycloak.models.utils.ModelToRepresentation.*;
 
 import com.google.common.base.Strings;
 import io.phasetwo.service.model.OrganizationModel;
+import io.phasetwo.service.model.OrganizationRoleModel;
+import io.phasetwo.service.model.RoleMappingChanges;
+import io.phasetwo.service.representation.BulkResponseItem;
 import io.phasetwo.service.util.ActiveOrganization;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import lombok.extern.jbosslog.JBossLog;
 import org.keycloak.events.EventBuilder;
@@ -83,6 +93,7 @@ public class MembersResource extends OrganizationAdminResource {
       }
 
       organization.revokeMembership(member);
+      auth.invalidateCallerRoles(List.of(userId));
       adminEvent
           .resource(ORGANIZATION_MEMBERSHIP.name())
           .operation(OperationType.DELETE)
@@ -118,6 +129,7 @@ public class MembersResource extends OrganizationAdminResource {
     if (member != null) {
       if (!organization.hasMembership(member)) {
         organization.grantMembership(member);
+        auth.invalidateCallerRoles(List.of(userId));
         adminEvent
             .resource(ORGANIZATION_MEMBERSHIP.name())
             .operation(OperationType.CREATE)
@@ -132,6 +144,204 @@ public class MembersResource extends OrganizationAdminResource {
     }
   }
 
+  @PUT
+  @Path("")
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response addMembers(List<String> userIds) {
+    requireBody(userIds);
+    log.debugf("Add %d members for %s %s", userIds.size(), realm.getName(), organization.getId());
+    canManage();
+
+    Map<String, UserModel> users = getUsers(userIds);
+    Set<String> granted = organization.grantMemberships(users.values());
+    auth.invalidateCallerRoles(granted);
+    if (!granted.isEmpty()) {
+      adminEvent
+          .resource(ORGANIZATION_MEMBERSHIP.name())
+          .operation(OperationType.CREATE)
+          .resourcePath(session.getContext().getUri())
+          .representation(granted)
+          .success();
+    }
+
+    List<BulkResponseItem> responseItems =
+        userIds.stream()
+            .map(
+                id -> {
+                  BulkResponseItem item =
+                      new BulkResponseItem()
+                          .status(Response.Status.CREATED.getStatusCode())
+                          .item(id);
+                  if (!users.containsKey(id)) {
+                    item.setStatus(Response.Status.NOT_FOUND.getStatusCode());
+                    item.setError("User not found");
+                  }
+                  return item;
+                })
+            .collect(Collectors.toList());
+
+    return Response.status(207) // <-Multi-Status
+        .location(session.getContext().getUri().getAbsolutePathBuilder().build())
+        .entity(responseItems)
+        .build();
+  }
+
+  @PATCH
+  @Path("")
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response removeMembers(List<String> userIds) {
+    requireBody(userIds);
+    log.debugf(
+        "Remove %d members from %s %s", userIds.size(), realm.getName(), organization.getId());
+    canManage();
+
+    Map<String, UserModel> users = getUsers(userIds);
+    String defaultAdmin = OrganizationResourceProviderFactory.getDefaultAdminUsername(organization);
+    List<UserModel> members =
+        users.values().stream()
+            .filter(u -> !defaultAdmin.equals(u.getUsername()))
+            .collect(Collectors.toList());
+    Set<String> revoked = organization.revokeMemberships(members);
+    members.stream()
+        .filter(m -> revoked.contains(m.getId()))
+        .forEach(this::removeActiveOrganization);
+    auth.invalidateCallerRoles(revoked);
+    if (!revoked.isEmpty()) {
+      adminEvent
+          .resource(ORGANIZATION_MEMBERSHIP.name())
+          .operation(OperationType.DELETE)
+          .resourcePath(session.getContext().getUri())
+          .representation(revoked)
+          .success();
+    }
+
+    List<BulkResponseItem> responseItems =
+        userIds.stream()
+            .map(
+                id -> {
+                  BulkResponseItem item =
+                      new BulkResponseItem()
+                          .status(Response.Status.NO_CONTENT.getStatusCode())
+                          .item(id);
+                  UserModel member = users.get(id);
+                  if (member == null) {
+                    item.setStatus(Response.Status.NOT_FOUND.getStatusCode());
+                    item.setError("User not found");
+                  } else if (defaultAdmin.equals(member.getUsername())) {
+                    item.setStatus(Response.Status.FORBIDDEN.getStatusCode());
+                    item.setError("Cannot remove default organization user.");
+                  } else if (!revoked.contains(id)) {
+                    item.setStatus(Response.Status.NOT_FOUND.getStatusCode());
+                    item.setError("User is not a member");
+                  }
+                  return item;
+                })
+            .collect(Collectors.toList());
+
+    return Response.status(207) // <-Multi-Status
+        .location(session.getContext().getUri().getAbsolutePathBuilder().build())
+        .entity(responseItems)
+        .build();
+  }
+
+  @PUT
+  @Path("roles")
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response setMembersRoles(Map<String, List<String>> rolesByUserId) {
+    requireBody(rolesByUserId);
+    log.debugf(
+        "Set roles of %d members of %s %s",
+        rolesByUserId.size(), realm.getName(), organization.getId());
+    canManageRoles();
+
+    Map<String, UserModel> users = getUsers(new ArrayList<>(rolesByUserId.keySet()));
+    Set<String> members = organization.getMemberIds(users.values());
+    Set<String> roleNames =
+        organization
+            .getRolesStream()
+            .map(OrganizationRoleModel::getName)
+            .collect(Collectors.toSet());
+
+    Map<String, BulkResponseItem> responseItems = new LinkedHashMap<>();
+    Map<UserModel, Set<String>> roles = new LinkedHashMap<>();
+    rolesByUserId.forEach(
+        (id, names) -> {
+          BulkResponseItem item =
+              new BulkResponseItem().status(Response.Status.OK.getStatusCode()).item(id);
+          responseItems.put(id, item);
+          List<String> unknown =
+              names == null
+                  ? List.of()
+                  : names.stream()
+                      .filter(n -> !roleNames.contains(n))
+                      .distinct()
+                      .collect(Collectors.toList());
+          if (!users.containsKey(id)) {
+            item.setStatus(Response.Status.NOT_FOUND.getStatusCode());
+            item.setError(String.format("User %s doesn't exist", id));
+          } else if (!members.contains(id)) {
+            item.setStatus(Response.Status.BAD_REQUEST.getStatusCode());
+            item.setError(
+                String.format(
+                    "User %s must be a member of %s to be granted roles.",
+                    id, organization.getName()));
+          } else if (names == null) {
+            item.setStatus(Response.Status.BAD_REQUEST.getStatusCode());
+            item.setError(String.format("Missing roles of user %s", id));
+          } else if (!unknown.isEmpty()) {
+            item.setStatus(Response.Status.BAD_REQUEST.getStatusCode());
+            item.setError(
+                String.format(
+                    "Organization %s doesn't contain roles %s",
+                    organization.getId(), String.join(", ", unknown)));
+          } else {
+            roles.put(users.get(id), new HashSet<>(names));
+          }
+        });
+
+    RoleMappingChanges changes = organization.setMemberRoles(roles);
+    auth.invalidateCallerRoles(changes.getGranted().keySet());
+    auth.invalidateCallerRoles(changes.getRevoked().keySet());
+    if (!changes.getGranted().isEmpty()) {
+      adminEvent
+          .resource(ORGANIZATION_ROLE_MAPPING.name())
+          .operation(OperationType.CREATE)
+          .resourcePath(session.getContext().getUri())
+          .representation(changes.getGranted())
+          .success();
+    }
+    if (!changes.getRevoked().isEmpty()) {
+      adminEvent
+          .resource(ORGANIZATION_ROLE_MAPPING.name())
+          .operation(OperationType.DELETE)
+          .resourcePath(session.getContext().getUri())
+          .representation(changes.getRevoked())
+          .success();
+    }
+
+    return Response.status(207) // <-Multi-Status
+        .location(session.getContext().getUri().getAbsolutePathBuilder().build())
+        .entity(new ArrayList<>(responseItems.values()))
+        .build();
+  }
+
+  /** Clears the active organization of the member, if it is this organization. */
+  private void removeActiveOrganization(UserModel member) {
+    if (organization.getId().equals(member.getFirstAttribute(ACTIVE_ORGANIZATION))) {
+      member.removeAttribute(ACTIVE_ORGANIZATION);
+
+      EventBuilder event = new EventBuilder(realm, session, connection);
+      event
+          .event(UPDATE_PROFILE)
+          .user(user)
+          .detail("removed_active_organization_id", organization.getId())
+          .success();
+    }
+  }
+
   private void canManage() {
     if (!auth.hasManageOrgs() && !auth.hasOrgManageMembers(organization)) {
       throw new NotAuthorizedException(
@@ -141,6 +351,15 @@ public class MembersResource extends OrganizationAdminResource {
     }
   }
 
+  private void canManageRoles() {
+    if (!auth.hasManageOrgs() && !auth.hasOrgManageRoles(organization)) {
+      throw new NotAuthorizedException(
+          String.format(
+              "User %s doesn't have permission to manage roles in org %s",
+              auth.getUser().getId(), organization.getName()));
+    }
+  }
+
   private void canDelete(String userId) {
     if (!userId.equals(user.getId())) {
       canManage();
@@ -1,23 +1,37 @@
 package io.phasetwo.service.resource;
 
+import static org.keycloak.protocol.oidc.mappers.OIDCAttributeMapperHelper.TOKEN_CLAIM_NAME;
+
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import io.phasetwo.service.model.InvitationModel;
 import io.phasetwo.service.model.OrganizationModel;
-import io.phasetwo.service.model.OrganizationRoleModel;
+import io.phasetwo.service.model.OrganizationProvider;
 import io.phasetwo.service.model.jpa.entity.InvitationEntity;
 import io.phasetwo.service.model.jpa.entity.OrganizationEntity;
 import io.phasetwo.service.model.jpa.entity.OrganizationMemberEntity;
 import io.phasetwo.service.model.jpa.entity.TeamEntity;
+import io.phasetwo.service.protocol.oidc.mappers.OrganizationRoleMapper;
 import jakarta.ws.rs.NotAuthorizedException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 import lombok.extern.jbosslog.JBossLog;
+import org.keycloak.common.util.Time;
 import org.keycloak.models.ClientModel;
+import org.keycloak.models.ClientScopeModel;
+import org.keycloak.models.ProtocolMapperModel;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.jpa.entities.UserEntity;
 import org.keycloak.representations.AccessToken;
 import org.keycloak.services.resources.admin.AdminAuth;
+import org.keycloak.utils.KeycloakSessionUtil;
 
 /** */
 @JBossLog
@@ -27,40 +41,48 @@ public class OrganizationAdminAuth extends AdminAuth {
   public static final String ROLE_VIEW_ORGANIZATION = "view-organizations";
   public static final String ROLE_MANAGE_ORGANIZATION = "manage-organizations";
 
+  private Boolean useTokenRoles;
+  private Map<String, OrganizationRoles> callerRoles;
+  private final Map<String, Boolean> clientRoles = Maps.newHashMap();
+
   public OrganizationAdminAuth(
       RealmModel realm, AccessToken token, UserModel user, ClientModel client) {
     super(realm, token, user, client);
     log.debugf("Realm passed to ctr is %s", realm.getName());
   }
 
+  private boolean hasClientRole(String role) {
+    return clientRoles.computeIfAbsent(role, r -> hasAppRole(getClient(), r));
+  }
+
   // create-organization
   void requireCreateOrg() {
-    if (!hasAppRole(getClient(), ROLE_CREATE_ORGANIZATION))
+    if (!hasClientRole(ROLE_CREATE_ORGANIZATION))
       throw new NotAuthorizedException(ROLE_CREATE_ORGANIZATION);
   }
 
   boolean hasCreateOrg() {
-    return hasAppRole(getClient(), ROLE_CREATE_ORGANIZATION);
+    return hasClientRole(ROLE_CREATE_ORGANIZATION);
   }
 
   // view-organizations
   void requireViewOrgs() {
-    if (!hasAppRole(getClient(), ROLE_VIEW_ORGANIZATION))
+    if (!hasClientRole(ROLE_VIEW_ORGANIZATION))
       throw new NotAuthorizedException(ROLE_VIEW_ORGANIZATION);
   }
 
   boolean hasViewOrgs() {
-    return hasAppRole(getClient(), ROLE_VIEW_ORGANIZATION);
+    return hasClientRole(ROLE_VIEW_ORGANIZATION);
   }
 
   // manage-organizations
   void requireManageOrgs() {
-    if (!hasAppRole(getClient(), ROLE_MANAGE_ORGANIZATION))
+    if (!hasClientRole(ROLE_MANAGE_ORGANIZATION))
       throw new NotAuthorizedException(ROLE_MANAGE_ORGANIZATION);
   }
 
   boolean hasManageOrgs() {
-    return hasAppRole(getClient(), ROLE_MANAGE_ORGANIZATION);
+    return hasClientRole(ROLE_MANAGE_ORGANIZATION);
   }
 
   // org in realm
@@ -175,7 +197,7 @@ public class OrganizationAdminAuth extends AdminAuth {
    *     or they are a member of the organization.
    */
   boolean hasOrgViewOrg(OrganizationModel org) {
-    return hasOrgRole(org, ORG_ROLE_VIEW_ORGANIZATION) || org.hasMembership(getUser());
+    return hasOrgRole(org, ORG_ROLE_VIEW_ORGANIZATION) || getCallerRoles(org) != null;
   }
 
   /**
@@ -292,31 +314,217 @@ public class OrganizationAdminAuth extends AdminAuth {
 
   static String ORGANIZATIONS_CLAIM = "organizations";
 
+  // compact organization claim format
+  public static final String COMPACT_NAME = "n";
+  public static final String COMPACT_DEFAULT_ROLES = "r";
+  public static final String COMPACT_CUSTOM_ROLES = "c";
+
+  /**
+   * Encode roles in the compact claim format. Default org roles are set as bits in {@code r}, by
+   * their index in {@link #DEFAULT_ORG_ROLES}. Any other roles are listed by name in {@code c},
+   * which is omitted if there are none.
+   *
+   * @param roles The role names
+   * @return The compact representation of the roles
+   */
+  public static Map<String, Object> encodeCompactRoles(Collection<String> roles) {
+    List<String> custom = Lists.newArrayList();
+    for (String role : roles) {
+      if (defaultOrgRoleIndex(role) < 0) custom.add(role);
+    }
+    Map<String, Object> encoded = Maps.newHashMap();
+    encoded.put(COMPACT_DEFAULT_ROLES, encodeDefaultOrgRoles(roles));
+    if (!custom.isEmpty()) encoded.put(COMPACT_CUSTOM_ROLES, custom);
+    return encoded;
+  }
+
+  /**
+   * Decode the roles of a single organization entry in the organizations claim, in either the
+   * default ({@code roles}) or the compact ({@code r} and {@code c}) format. A claim of any other
+   * shape has no roles, so that the roles are looked up in the database instead.
+   *
+   * @param claim The claim value for one organization
+   * @return The role names, default org roles first
+   */
+  public static List<String> decodeOrganizationRoles(Map<?, ?> claim) {
+    Object rs = claim.get("roles");
+    if (rs != null) return toRoleNames(rs).orElse(ImmutableList.of());
+    Object mask = claim.get(COMPACT_DEFAULT_ROLES);
+    if (!(mask instanceof Number)) return ImmutableList.of();
+    List<String> roles = Lists.newArrayList();
+    int bits = ((Number) mask).intValue();
+    for (int i = 0; i < DEFAULT_ORG_ROLES.length; i++) {
+      if ((bits & (1 << i)) != 0) roles.add(DEFAULT_ORG_ROLES[i]);
+    }
+    Object custom = claim.get(COMPACT_CUSTOM_ROLES);
+    if (custom != null) {
+      Optional<List<String>> names = toRoleNames(custom);
+      if (names.isEmpty()) return ImmutableList.of();
+      roles.addAll(names.get());
+    }
+    return roles;
+  }
+
+  /** The value as a list of role names, or empty if it isn't a list of strings. */
+  private static Optional<List<String>> toRoleNames(Object value) {
+    if (!(value instanceof List)) return Optional.empty();
+    List<String> names = Lists.newArrayList();
+    for (Object name : (List<?>) value) {
+      if (!(name instanceof String)) return Optional.empty();
+      names.add((String) name);
+    }
+    return Optional.of(names);
+  }
+
+  /**
+   * @param roles The role names
+   * @return A bitmask of the default org roles, by their index in {@link #DEFAULT_ORG_ROLES}
+   */
+  public static int encodeDefaultOrgRoles(Collection<String> roles) {
+    int mask = 0;
+    for (String role : roles) {
+      int i = defaultOrgRoleIndex(role);
+      if (i >= 0) mask |= 1 << i;
+    }
+    return mask;
+  }
+
+  private static int defaultOrgRoleIndex(String role) {
+    for (int i = 0; i < DEFAULT_ORG_ROLES.length; i++) {
+      if (DEFAULT_ORG_ROLES[i].equals(role)) return i;
+    }
+    return -1;
+  }
+
   private List<String> getOrganizationRoles(OrganizationModel org) {
     Object o = getToken().getOtherClaims().get(ORGANIZATIONS_CLAIM);
-    if (o == null || !(o instanceof Map)) return ImmutableList.of();
-    Map<String, Object> orgs = (Map<String, Object>) o;
-    Object os = orgs.get(org.getId());
-    if (os == null || !(os instanceof Map)) return ImmutableList.of();
-    Map<String, Object> osrg = (Map<String, Object>) os;
-    Object rs = osrg.get("roles");
-    if (rs == null || !(rs instanceof List)) return ImmutableList.of();
-    return (List<String>) rs;
+    if (!(o instanceof Map)) return ImmutableList.of();
+    Object os = ((Map<?, ?>) o).get(org.getId());
+    if (!(os instanceof Map)) return ImmutableList.of();
+    return decodeOrganizationRoles((Map<?, ?>) os);
   }
 
   private boolean hasOrgRoleInToken(OrganizationModel org, String roleName) {
     return (getOrganizationRoles(org).contains(roleName));
   }
 
+  /**
+   * Roles in the token's organizations claim are trusted when the realm has opted in, the token
+   * was issued by this realm to one of the clients listed in the realm's trusted clients, and it is
+   * no older than the configured max age. In addition, the organizations claim of the client may
+   * only be written by the Organization Role mapper, so that no other mapper can forge it. A role
+   * in the claim is granted without a database lookup, so a revoked role may still be honored
+   * until tokens issued before the revocation exceed the max age.
+   */
+  private boolean useTokenRoles() {
+    if (useTokenRoles == null) {
+      useTokenRoles =
+          TokenRolesPolicy.fromRealm(getRealm())
+                  .isTrusted(getToken(), getRealm().getName(), Time.currentTime())
+              && isClaimFromRoleMapper(getToken().getIssuedFor());
+    }
+    return useTokenRoles;
+  }
+
+  /**
+   * @param clientId The client the token was issued for
+   * @return true if the client's organizations claim is only written by Organization Role mappers
+   */
+  private boolean isClaimFromRoleMapper(String clientId) {
+    ClientModel client = getRealm().getClientByClientId(clientId);
+    if (client == null) return false;
+    Stream<ProtocolMapperModel> scopeMappers =
+        Stream.concat(
+                client.getClientScopes(true).values().stream(),
+                client.getClientScopes(false).values().stream())
+            .flatMap(ClientScopeModel::getProtocolMappersStream);
+    List<String> claimMappers =
+        Stream.concat(client.getProtocolMappersStream(), scopeMappers)
+            .filter(m -> isOrganizationsClaim(m.getConfig().get(TOKEN_CLAIM_NAME)))
+            .map(ProtocolMapperModel::getProtocolMapper)
+            .toList();
+    boolean fromRoleMapper =
+        !claimMappers.isEmpty()
+            && claimMappers.stream().allMatch(OrganizationRoleMapper.PROVIDER_ID::equals);
+    if (!fromRoleMapper) {
+      log.debugf(
+          "Not using token roles. %s claim of %s is mapped by %s",
+          ORGANIZATIONS_CLAIM, clientId, claimMappers);
+    }
+    return fromRoleMapper;
+  }
+
+  private static boolean isOrganizationsClaim(String claimName) {
+    return claimName != null
+        && (claimName.equals(ORGANIZATIONS_CLAIM)
+            || claimName.startsWith(ORGANIZATIONS_CLAIM + "."));
+  }
+
+  /** The caller's roles in one organization. */
+  static class OrganizationRoles {
+    private final int defaultRoles;
+    private final Set<String> customRoles;
+
+    OrganizationRoles(Collection<String> roles) {
+      this.defaultRoles = encodeDefaultOrgRoles(roles);
+      ImmutableSet.Builder<String> custom = ImmutableSet.builder();
+      for (String role : roles) {
+        if (defaultOrgRoleIndex(role) < 0) custom.add(role);
+      }
+      this.customRoles = custom.build();
+    }
+
+    boolean hasRole(String roleName) {
+      int i = defaultOrgRoleIndex(roleName);
+      if (i >= 0) return (defaultRoles & (1 << i)) != 0;
+      return customRoles.contains(roleName);
+    }
+  }
+
+  /**
+   * The caller's roles in every organization they are a member of are loaded once, on the first
+   * check of the request, and all further checks are answered from them, until the resource
+   * changes the memberships or roles of the caller and calls {@link #invalidateCallerRoles}.
+   *
+   * @param org The selected organization
+   * @return The caller's roles in the org, or null if they are not a member
+   */
+  private OrganizationRoles getCallerRoles(OrganizationModel org) {
+    if (callerRoles == null) {
+      Map<String, Set<String>> roles =
+          KeycloakSessionUtil.getKeycloakSession()
+              .getProvider(OrganizationProvider.class)
+              .getUserOrganizationRoles(getRealm(), getUser());
+      callerRoles = Maps.newHashMapWithExpectedSize(roles.size());
+      roles.forEach((id, names) -> callerRoles.put(id, new OrganizationRoles(names)));
+    }
+    return callerRoles.get(org.getId());
+  }
+
+  /**
+   * Drop the caller's loaded roles if the caller is one of the users whose memberships or roles
+   * were changed, so that later checks of the request see the change.
+   *
+   * @param userIds The ids of the users whose memberships or roles changed
+   */
+  void invalidateCallerRoles(Collection<String> userIds) {
+    if (callerRoles != null && userIds.contains(getUser().getId())) {
+      callerRoles = null;
+    }
+  }
+
+  /** Drop the caller's loaded roles, after a change that may affect any member. */
+  void invalidateCallerRoles() {
+    callerRoles = null;
+  }
+
   private boolean hasOrgRole(OrganizationModel org, String roleName) {
-    /*
-    if (!hasOrgRoleInToken(org, roleName)) {
-      log.debugf("%s not in token %s", roleName, getToken().getOtherClaims());
-      return false;
+    if (useTokenRoles() && hasOrgRoleInToken(org, roleName)) {
+      log.debugf("%s has role %s in token", getUser().getId(), roleName);
+      return true;
     }
-    */
-    OrganizationRoleModel role = org.getRoleByName(roleName);
-    boolean has = (role != null && role.hasRole(getUser()));
+    OrganizationRoles roles = getCallerRoles(org);
+    boolean has = (roles != null && roles.hasRole(roleName));
     log.debugf("%s has role %s? %b", getUser().getId(), roleName, has);
     return has;
   }
@@ -2,11 +2,18 @@ package io.phasetwo.service.resource;
 
 import io.phasetwo.service.model.OrganizationProvider;
 import jakarta.persistence.EntityManager;
+import jakarta.ws.rs.BadRequestException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
 import lombok.extern.jbosslog.JBossLog;
 import org.keycloak.connections.jpa.JpaConnectionProvider;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.UserModel;
 
 /** */
 @JBossLog
@@ -34,6 +41,20 @@ public class OrganizationAdminResource extends AbstractAdminResource<Organizatio
     }
   }
 
+  /** The body of a bulk request, which is required. */
+  protected static <T> T requireBody(T body) {
+    if (body == null) throw new BadRequestException("Missing request body");
+    return body;
+  }
+
+  /** The users of the realm with the ids, looked up in bulk. */
+  protected Map<String, UserModel> getUsers(List<String> userIds) {
+    List<String> ids =
+        userIds.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+    return orgs.getUsersStream(realm, ids)
+        .collect(Collectors.toMap(UserModel::getId, u -> u, (a, b) -> a, LinkedHashMap::new));
+  }
+
   protected final void init() {
     this.em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
     this.orgs = session.getProvider(OrganizationProvider.class);
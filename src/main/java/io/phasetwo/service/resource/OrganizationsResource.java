@@ -12,14 +12,18 @@ import jakarta.validation.constraints.*;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import lombok.extern.jbosslog.JBossLog;
 import org.keycloak.events.admin.OperationType;
 import org.keycloak.models.Constants;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.UserModel;
 import org.keycloak.utils.SearchQueryUtils;
 
 @JBossLog
@@ -46,21 +50,17 @@ public class OrganizationsResource extends OrganizationAdminResource {
   @Produces(MediaType.APPLICATION_JSON)
   public Response me() {
     Map<String, Object> claim = Maps.newHashMap();
-    orgs.getUserOrganizationsStream(realm, user)
+    orgs.getUserOrganizationRoles(realm, user)
         .forEach(
-            o -> {
-              List<String> roles = Lists.newArrayList();
-              o.getRolesStream()
-                  .forEach(
-                      r -> {
-                        if (r.hasRole(user)) roles.add(r.getName());
-                      });
+            (id, roles) -> {
+              OrganizationModel o = orgs.getOrganizationById(realm, id);
+              if (o == null) return;
               Map<String, Object> org = Maps.newHashMap();
               org.put("name", o.getName());
               if (o.getDisplayName() != null) org.put("displayName", o.getDisplayName());
               if (o.getUrl() != null) org.put("url", o.getUrl());
               org.put("attributes", o.getAttributes());
-              org.put("roles", roles);
+              org.put("roles", Lists.newArrayList(roles));
               claim.put(o.getId(), org);
             });
     return Response.ok(claim).build();
@@ -73,7 +73,8 @@ public class OrganizationsResource extends OrganizationAdminResource {
       @QueryParam("search") String search,
       @QueryParam("first") Integer firstResult,
       @QueryParam("max") Integer maxResults,
-      @QueryParam("q") String searchQuery) {
+      @QueryParam("q") String searchQuery,
+      @QueryParam("cursor") String cursor) {
     firstResult = firstResult != null ? firstResult : 0;
     maxResults =
         (maxResults != null && maxResults <= Constants.DEFAULT_MAX_RESULTS)
@@ -90,16 +91,62 @@ public class OrganizationsResource extends OrganizationAdminResource {
       searchAttributes.put("name", search.trim());
     }
 
+    Optional<UserModel> member =
+        auth.hasViewOrgs() ? Optional.empty() : Optional.of(auth.getUser());
+    if (cursor != null) {
+      return listOrgsAfter(searchAttributes, cursor, maxResults, member);
+    }
     return orgs.searchForOrganizationStream(
-            realm,
-            searchAttributes,
-            firstResult,
-            maxResults,
-            auth.hasViewOrgs() ? Optional.empty() : Optional.of(auth.getUser()))
+            realm, searchAttributes, firstResult, maxResults, member)
+        .filter(m -> (auth.hasViewOrgs() || auth.hasOrgViewOrg(m)))
+        .map(m -> convertOrganizationModelToOrganization(m));
+  }
+
+  /**
+   * Keyset pagination. The cursor is empty for the first page, and is then taken from the {@link
+   * #NEXT_CURSOR_HEADER} of the previous page. The header is absent from the last page.
+   */
+  private Stream<Organization> listOrgsAfter(
+      Map<String, String> searchAttributes,
+      String cursor,
+      int maxResults,
+      Optional<UserModel> member) {
+    String[] after = decodeCursor(cursor);
+    List<OrganizationModel> page =
+        orgs.searchForOrganizationStreamAfter(
+                realm, searchAttributes, after[0], after[1], maxResults, member)
+            .collect(Collectors.toList());
+    if (page.size() == maxResults) {
+      OrganizationModel last = page.get(page.size() - 1);
+      session
+          .getContext()
+          .getHttpResponse()
+          .setHeader(NEXT_CURSOR_HEADER, encodeCursor(last.getName(), last.getId()));
+    }
+    return page.stream()
         .filter(m -> (auth.hasViewOrgs() || auth.hasOrgViewOrg(m)))
         .map(m -> convertOrganizationModelToOrganization(m));
   }
 
+  static String encodeCursor(String name, String id) {
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString((id + ":" + name).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** The name and id of the last organization of the previous page, or nulls for the first. */
+  static String[] decodeCursor(String cursor) {
+    if (cursor.isEmpty()) return new String[] {null, null};
+    try {
+      String s = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      int i = s.indexOf(':');
+      if (i > 0) return new String[] {s.substring(i + 1), s.substring(0, i)};
+    } catch (IllegalArgumentException e) {
+      // fall through
+    }
+    throw new BadRequestException("Invalid cursor");
+  }
+
   @GET
   @Path("count")
   @Produces(MediaType.APPLICATION_JSON)
@@ -6,13 +6,18 @@ import static org.keycloak.models.utils.ModelToRepresentation.*;
 
 import io.phasetwo.service.model.OrganizationModel;
 import io.phasetwo.service.model.OrganizationRoleModel;
+import io.phasetwo.service.representation.BulkResponseItem;
 import io.phasetwo.service.representation.OrganizationRole;
 import jakarta.validation.constraints.*;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import lombok.extern.jbosslog.JBossLog;
 import org.keycloak.events.admin.OperationType;
@@ -109,6 +114,7 @@ public class RoleResource extends OrganizationAdminResource {
       }
       if (!role.hasRole(user)) {
         role.grantRole(user);
+        auth.invalidateCallerRoles(List.of(userId));
 
         adminEvent
             .resource(ORGANIZATION_ROLE_MAPPING.name())
@@ -125,6 +131,107 @@ public class RoleResource extends OrganizationAdminResource {
     }
   }
 
+  @PUT
+  @Path("users")
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response grantUsersRole(List<String> userIds) {
+    requireBody(userIds);
+    log.debugf(
+        "Grant role %s to %d users in %s %s",
+        name, userIds.size(), realm.getName(), organization.getId());
+    canManage();
+
+    Map<String, UserModel> users = getUsers(userIds);
+    Set<String> members = organization.getMemberIds(users.values());
+    Set<String> granted =
+        role.grantRoleToUsers(
+            users.values().stream()
+                .filter(u -> members.contains(u.getId()))
+                .collect(Collectors.toList()));
+    auth.invalidateCallerRoles(granted);
+    if (!granted.isEmpty()) {
+      adminEvent
+          .resource(ORGANIZATION_ROLE_MAPPING.name())
+          .operation(OperationType.CREATE)
+          .resourcePath(session.getContext().getUri())
+          .representation(granted)
+          .success();
+    }
+
+    List<BulkResponseItem> responseItems =
+        userIds.stream()
+            .map(
+                id -> {
+                  BulkResponseItem item =
+                      new BulkResponseItem()
+                          .status(Response.Status.CREATED.getStatusCode())
+                          .item(id);
+                  if (!users.containsKey(id)) {
+                    item.setStatus(Response.Status.NOT_FOUND.getStatusCode());
+                    item.setError(String.format("User %s doesn't exist", id));
+                  } else if (!members.contains(id)) {
+                    item.setStatus(Response.Status.BAD_REQUEST.getStatusCode());
+                    item.setError(
+                        String.format(
+                            "User %s must be a member of %s to be granted role.",
+                            id, organization.getName()));
+                  }
+                  return item;
+                })
+            .collect(Collectors.toList());
+
+    return Response.status(207) // <-Multi-Status
+        .location(session.getContext().getUri().getAbsolutePathBuilder().build())
+        .entity(responseItems)
+        .build();
+  }
+
+  @PATCH
+  @Path("users")
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response revokeUsersRole(List<String> userIds) {
+    requireBody(userIds);
+    log.debugf(
+        "Revoke role %s from %d users in %s %s",
+        name, userIds.size(), realm.getName(), organization.getId());
+    canManage();
+
+    Map<String, UserModel> users = getUsers(userIds);
+    Set<String> revoked = role.revokeRoleFromUsers(users.values());
+    auth.invalidateCallerRoles(revoked);
+    if (!revoked.isEmpty()) {
+      adminEvent
+          .resource(ORGANIZATION_ROLE_MAPPING.name())
+          .operation(OperationType.DELETE)
+          .resourcePath(session.getContext().getUri())
+          .representation(revoked)
+          .success();
+    }
+
+    List<BulkResponseItem> responseItems =
+        userIds.stream()
+            .map(
+                id -> {
+                  BulkResponseItem item =
+                      new BulkResponseItem()
+                          .status(Response.Status.NO_CONTENT.getStatusCode())
+                          .item(id);
+                  if (!revoked.contains(id)) {
+                    item.setStatus(Response.Status.NOT_FOUND.getStatusCode());
+                    item.setError(String.format("User %s doesn't have role %s", id, name));
+                  }
+                  return item;
+                })
+            .collect(Collectors.toList());
+
+    return Response.status(207) // <-Multi-Status
+        .location(session.getContext().getUri().getAbsolutePathBuilder().build())
+        .entity(responseItems)
+        .build();
+  }
+
   @DELETE
   @Path("users/{userId}")
   @Produces(MediaType.APPLICATION_JSON)
@@ -134,6 +241,7 @@ public class RoleResource extends OrganizationAdminResource {
     UserModel user = session.users().getUserById(realm, userId);
     if (user != null && role.hasRole(user)) {
       role.revokeRole(user);
+      auth.invalidateCallerRoles(List.of(userId));
       adminEvent
           .resource(ORGANIZATION_ROLE_MAPPING.name())
           .operation(OperationType.DELETE)
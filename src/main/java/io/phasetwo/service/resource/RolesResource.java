@@ -145,6 +145,7 @@ public class RolesResource extends OrganizationAdminResource {
     }
 
     organization.removeRole(roleName);
+    auth.invalidateCallerRoles();
 
     adminEvent
         .resource(ORGANIZATION_ROLE.name())
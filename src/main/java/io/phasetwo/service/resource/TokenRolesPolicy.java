@@ -0,0 +1,84 @@
+package io.phasetwo.service.resource;
+
+import static io.phasetwo.service.Orgs.ORG_AUTH_TOKEN_ROLES_CLIENTS_KEY;
+import static io.phasetwo.service.Orgs.ORG_AUTH_TOKEN_ROLES_KEY;
+import static io.phasetwo.service.Orgs.ORG_AUTH_TOKEN_ROLES_MAX_AGE_KEY;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import java.util.Set;
+import lombok.extern.jbosslog.JBossLog;
+import org.keycloak.models.RealmModel;
+import org.keycloak.representations.AccessToken;
+
+/**
+ * Decides whether the organizations claim of a caller's token may be used to authorize org roles
+ * without a database lookup. The realm has to opt in, and list the clients whose tokens are
+ * trusted. A token is only trusted when it was issued by the realm, to one of those clients, no
+ * more than the max age ago.
+ */
+@JBossLog
+class TokenRolesPolicy {
+
+  static final int DEFAULT_MAX_AGE = 60;
+
+  private final boolean enabled;
+  private final int maxAge;
+  private final Set<String> clients;
+
+  TokenRolesPolicy(boolean enabled, int maxAge, Set<String> clients) {
+    this.enabled = enabled;
+    this.maxAge = maxAge;
+    this.clients = ImmutableSet.copyOf(clients);
+  }
+
+  static TokenRolesPolicy fromRealm(RealmModel realm) {
+    boolean enabled = Boolean.parseBoolean(realm.getAttribute(ORG_AUTH_TOKEN_ROLES_KEY));
+    int maxAge = DEFAULT_MAX_AGE;
+    String value = realm.getAttribute(ORG_AUTH_TOKEN_ROLES_MAX_AGE_KEY);
+    if (value != null) {
+      try {
+        maxAge = Integer.parseInt(value.trim());
+      } catch (NumberFormatException e) {
+        log.warnf("Invalid %s %s", ORG_AUTH_TOKEN_ROLES_MAX_AGE_KEY, value);
+      }
+    }
+    Set<String> clients = ImmutableSet.of();
+    value = realm.getAttribute(ORG_AUTH_TOKEN_ROLES_CLIENTS_KEY);
+    if (value != null) {
+      clients =
+          ImmutableSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(value));
+    }
+    return new TokenRolesPolicy(enabled, maxAge, clients);
+  }
+
+  /**
+   * @param token The caller's token
+   * @param realmName The name of the realm the request is for
+   * @param now The current time, in seconds
+   * @return true if the organizations claim of the token may be trusted
+   */
+  boolean isTrusted(AccessToken token, String realmName, long now) {
+    if (!enabled) return false;
+    if (!isIssuedBy(token, realmName)) {
+      log.debugf(
+          "Not using token roles. Token issuer %s is not realm %s", token.getIssuer(), realmName);
+      return false;
+    }
+    if (token.getIssuedFor() == null || !clients.contains(token.getIssuedFor())) {
+      log.debugf("Not using token roles. Client %s is not trusted", token.getIssuedFor());
+      return false;
+    }
+    Long iat = token.getIat();
+    if (iat == null || iat > now || now - iat > maxAge) {
+      log.debugf("Not using token roles. Token issued at %s is older than %d", iat, maxAge);
+      return false;
+    }
+    return true;
+  }
+
+  private static boolean isIssuedBy(AccessToken token, String realmName) {
+    String issuer = token.getIssuer();
+    return issuer != null && issuer.endsWith("/realms/" + realmName);
+  }
+}
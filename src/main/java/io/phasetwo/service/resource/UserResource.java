@@ -151,6 +151,7 @@ public class UserResource extends OrganizationAdminResource {
             }
             if (!role.hasRole(user)) {
               role.grantRole(user);
+              auth.invalidateCallerRoles(List.of(userId));
 
               adminEvent
                   .resource(ORGANIZATION_ROLE_MAPPING.name())
@@ -201,6 +202,7 @@ public class UserResource extends OrganizationAdminResource {
             }
             if (role.hasRole(user)) {
               role.revokeRole(user);
+              auth.invalidateCallerRoles(List.of(userId));
               adminEvent
                   .resource(ORGANIZATION_ROLE_MAPPING.name())
                   .operation(OperationType.DELETE)
@@ -6,8 +6,10 @@ import com.google.common.collect.Lists;
 import io.phasetwo.service.model.OrganizationModel;
 import io.phasetwo.service.model.OrganizationProvider;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.Set;
 import org.jboss.logging.Logger;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.RealmModel;
@@ -23,16 +25,38 @@ public class ActiveOrganization {
 
   private final OrganizationProvider organizationProvider;
 
+  private Map<String, Set<String>> organizationRoles;
+
   private OrganizationModel organization;
 
   public ActiveOrganization(KeycloakSession session, RealmModel realm, UserModel user) {
+    this(session, realm, user, null);
+  }
+
+  /**
+   * @param organizationRoles the user's organization ids mapped to their role names, if they have
+   *     already been resolved
+   */
+  public ActiveOrganization(
+      KeycloakSession session,
+      RealmModel realm,
+      UserModel user,
+      Map<String, Set<String>> organizationRoles) {
     this.realm = realm;
     this.user = user;
     this.organizationProvider = session.getProvider(OrganizationProvider.class);
+    this.organizationRoles = organizationRoles;
+  }
+
+  private Map<String, Set<String>> getOrganizationRoles() {
+    if (organizationRoles == null) {
+      organizationRoles = organizationProvider.getUserOrganizationRoles(realm, user);
+    }
+    return organizationRoles;
   }
 
   public boolean hasOrganization() {
-    return organizationProvider.getUserOrganizationsStream(realm, user).findFirst().isPresent();
+    return !getOrganizationRoles().isEmpty();
   }
 
   public boolean isValid() {
@@ -51,9 +75,7 @@ public class ActiveOrganization {
     // api)
     // no issue if read-only user attributes is enabled with "org.ro.*"
     // --spi-user-profile-declarative-user-profile-read-only-attributes=org.ro.*
-    if (organizationProvider
-        .getUserOrganizationsStream(realm, user)
-        .noneMatch(org -> org.getId().equals(activeOrganizationId))) {
+    if (!getOrganizationRoles().containsKey(activeOrganizationId)) {
       log.warnf("%s doesn't belong to this organization", user.getUsername());
 
       // verify that the organization still exists
@@ -81,9 +103,11 @@ public class ActiveOrganization {
 
   public boolean getDefaultActiveOrganization() {
 
-    Stream<OrganizationModel> userOrganizations =
-        organizationProvider.getUserOrganizationsStream(realm, user);
-    Optional<OrganizationModel> firstOrganization = userOrganizations.findFirst();
+    Optional<OrganizationModel> firstOrganization =
+        getOrganizationRoles().keySet().stream()
+            .map(id -> organizationProvider.getOrganizationById(realm, id))
+            .filter(Objects::nonNull)
+            .findFirst();
 
     if (firstOrganization.isEmpty()) {
       return false;
@@ -99,15 +123,7 @@ public class ActiveOrganization {
   }
 
   public List<String> getUserActiveOrganizationRoles() {
-    List<String> userOrganizationRoles = Lists.newArrayList();
-    organization
-        .getRolesStream()
-        .forEach(
-            role -> {
-              if (role.hasRole(user)) {
-                userOrganizationRoles.add(role.getName());
-              }
-            });
-    return userOrganizationRoles;
+    Set<String> roles = getOrganizationRoles().get(organization.getId());
+    return roles == null ? Lists.newArrayList() : Lists.newArrayList(roles);
   }
 }
@@ -0,0 +1,35 @@
+package io.phasetwo.service.util;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.net.InternetDomainName;
+import java.util.List;
+
+public class Domains {
+
+  /**
+   * Get the names an organization domain is matched with for a domain, ordered from the domain
+   * itself to its shortest parent. The walk stops at the registrable domain, so that an
+   * organization with a public suffix such as {@code co.uk} doesn't match every domain under it.
+   * For example, {@code eu.corp.example.co.uk} gives {@code eu.corp.example.co.uk}, {@code
+   * corp.example.co.uk} and {@code example.co.uk}. Public suffixes and invalid domains give none,
+   * and domains that aren't under a known public suffix stop before their top-level domain.
+   */
+  public static List<String> getDomainAndParents(String domain) {
+    if (domain == null || !InternetDomainName.isValid(domain)) return ImmutableList.of();
+    InternetDomainName d = InternetDomainName.from(domain);
+    if (d.isPublicSuffix()) return ImmutableList.of();
+    ImmutableList.Builder<String> names = ImmutableList.builder();
+    if (d.isUnderPublicSuffix()) {
+      InternetDomainName top = d.topPrivateDomain();
+      for (; !d.equals(top); d = d.parent()) {
+        names.add(d.toString());
+      }
+      names.add(top.toString());
+    } else {
+      for (; d.parts().size() > 1; d = d.parent()) {
+        names.add(d.toString());
+      }
+    }
+    return names.build();
+  }
+}
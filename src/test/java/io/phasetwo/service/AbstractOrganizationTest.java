@@ -81,6 +81,7 @@ public abstract class AbstractOrganizationTest {
           .withAccessToHost(true);
 
   protected static final int WEBHOOK_SERVER_PORT = 8083;
+  protected static final int SMTP_SERVER_PORT = 2525;
 
   static {
     container.start();
@@ -88,7 +89,7 @@ public abstract class AbstractOrganizationTest {
 
   @BeforeAll
   public static void beforeAll() {
-    Testcontainers.exposeHostPorts(WEBHOOK_SERVER_PORT);
+    Testcontainers.exposeHostPorts(WEBHOOK_SERVER_PORT, SMTP_SERVER_PORT);
     resteasyClient =
         new ResteasyClientBuilderImpl()
             .disableTrustManager()
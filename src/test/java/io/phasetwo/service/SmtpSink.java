@@ -0,0 +1,93 @@
+package io.phasetwo.service;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** A minimal SMTP server that accepts every message, for checking the emails that are sent. */
+public class SmtpSink implements AutoCloseable {
+
+  private final ServerSocket serverSocket;
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final List<String> recipients = new CopyOnWriteArrayList<>();
+  private final List<String> messages = new CopyOnWriteArrayList<>();
+
+  public SmtpSink(int port) throws IOException {
+    serverSocket = new ServerSocket(port);
+    executor.execute(this::accept);
+  }
+
+  public List<String> getRecipients() {
+    return recipients;
+  }
+
+  public List<String> getMessages() {
+    return messages;
+  }
+
+  private void accept() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        executor.execute(() -> handle(socket));
+      } catch (IOException e) {
+        // closed
+      }
+    }
+  }
+
+  private void handle(Socket socket) {
+    try (socket;
+        BufferedReader in =
+            new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+        Writer out = new OutputStreamWriter(socket.getOutputStream(), UTF_8)) {
+      reply(out, "220 localhost");
+      String line;
+      while ((line = in.readLine()) != null) {
+        String command = line.toUpperCase();
+        if (command.startsWith("EHLO") || command.startsWith("HELO")) {
+          reply(out, "250 localhost");
+        } else if (command.startsWith("RCPT TO:")) {
+          recipients.add(line.substring(line.indexOf('<') + 1, line.indexOf('>')).toLowerCase());
+          reply(out, "250 OK");
+        } else if (command.equals("DATA")) {
+          reply(out, "354 End data with <CR><LF>.<CR><LF>");
+          StringBuilder message = new StringBuilder();
+          while ((line = in.readLine()) != null && !line.equals(".")) {
+            message.append(line).append("\n");
+          }
+          messages.add(message.toString());
+          reply(out, "250 OK");
+        } else if (command.equals("QUIT")) {
+          reply(out, "221 Bye");
+          return;
+        } else {
+          reply(out, "250 OK");
+        }
+      }
+    } catch (IOException e) {
+      // the client went away
+    }
+  }
+
+  private static void reply(Writer out, String reply) throws IOException {
+    out.write(reply + "\r\n");
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    executor.shutdownNow();
+  }
+}
@@ -2,11 +2,15 @@ package io.phasetwo.service.mapper;
 
 import static io.phasetwo.service.Helpers.createUserWithCredentials;
 import static io.phasetwo.service.Helpers.deleteUser;
+import static io.phasetwo.service.Orgs.ORG_AUTH_TOKEN_ROLES_CLIENTS_KEY;
+import static io.phasetwo.service.Orgs.ORG_AUTH_TOKEN_ROLES_KEY;
+import static io.phasetwo.service.Orgs.ORG_AUTH_TOKEN_ROLES_MAX_AGE_KEY;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
+import io.phasetwo.client.openapi.model.OrganizationRepresentation;
 import io.phasetwo.service.AbstractOrganizationTest;
 import io.phasetwo.service.protocol.oidc.mappers.OrganizationRoleMapper;
 import io.phasetwo.service.resource.OrganizationAdminAuth;
@@ -18,12 +22,16 @@ import java.util.Map;
 import lombok.extern.jbosslog.JBossLog;
 import org.junit.jupiter.api.Test;
 import org.keycloak.TokenVerifier;
+import org.keycloak.admin.client.CreatedResponseUtil;
+import org.keycloak.admin.client.Keycloak;
 import org.keycloak.admin.client.resource.RealmResource;
 import org.keycloak.protocol.oidc.OIDCLoginProtocol;
+import org.keycloak.protocol.oidc.mappers.HardcodedClaim;
 import org.keycloak.protocol.oidc.mappers.OIDCAttributeMapperHelper;
 import org.keycloak.representations.AccessToken;
 import org.keycloak.representations.idm.ClientRepresentation;
 import org.keycloak.representations.idm.ProtocolMapperRepresentation;
+import org.keycloak.representations.idm.RealmRepresentation;
 import org.keycloak.representations.idm.UserRepresentation;
 
 @JBossLog
@@ -54,7 +62,7 @@ class OrganizationRoleMapperTest extends AbstractOrganizationTest {
     ClientRepresentation client = realm.clients().findByClientId(ADMIN_CLI).get(0);
 
     // parse the received access-token
-    configureCustomOidcProtocolMapper(realm, client);
+    String mapperId = configureCustomOidcProtocolMapper(realm, client, new HashMap<>());
 
     keycloak = getKeycloak(REALM, ADMIN_CLI, user.getUsername(), "pass");
 
@@ -82,24 +90,178 @@ class OrganizationRoleMapperTest extends AbstractOrganizationTest {
     // change authorization
     keycloak =
         getKeycloak(REALM, ADMIN_CLI, container.getAdminUsername(), container.getAdminPassword());
+    // delete mapper
+    keycloak.realm(REALM).clients().get(client.getId()).getProtocolMappers().delete(mapperId);
     // delete user
     deleteUser(keycloak, REALM, user.getId());
     // delete organization
     deleteOrganization(keycloak, id);
   }
 
-  private static void configureCustomOidcProtocolMapper(
-      RealmResource realm, ClientRepresentation client) {
+  @Test
+  void shouldMapCompactOrganizationRoles() throws Exception {
+    // add org
+    String id = createDefaultOrg().getId();
+
+    final UserRepresentation user = createUserWithCredentials(keycloak, REALM, "jdoe", "pass");
+
+    Response response = putRequest("foo", id, "members", user.getId());
+    assertThat(response.getStatusCode(), is(Status.CREATED.getStatusCode()));
+
+    List<String> roles =
+        List.of(
+            OrganizationAdminAuth.ORG_ROLE_VIEW_ORGANIZATION,
+            OrganizationAdminAuth.ORG_ROLE_MANAGE_MEMBERS);
+
+    for (String roleName : roles) {
+      grantUserRole(id, roleName, user.getId());
+    }
+
+    RealmResource realm = keycloak.realm(REALM);
+    ClientRepresentation client = realm.clients().findByClientId(ADMIN_CLI).get(0);
+
+    Map<String, String> config = new HashMap<>();
+    config.put(OrganizationRoleMapper.COMPACT_ROLES, "true");
+    config.put(OrganizationRoleMapper.INCLUDE_ORGANIZATION_NAME, "false");
+    String mapperId = configureCustomOidcProtocolMapper(realm, client, config);
+
+    keycloak = getKeycloak(REALM, ADMIN_CLI, user.getUsername(), "pass");
+
+    TokenVerifier<AccessToken> verifier =
+        TokenVerifier.create(keycloak.tokenManager().getAccessTokenString(), AccessToken.class);
+    verifier.parse();
+
+    AccessToken accessToken = verifier.getToken();
+
+    Map<String, Object> customClaimValue =
+        (Map<String, Object>) accessToken.getOtherClaims().get(CLAIM);
+    assertNotNull(customClaimValue);
+    Map<String, Object> org = (Map<String, Object>) customClaimValue.get(id);
+    assertNotNull(org);
+    // view-organization is bit 0, manage-members is bit 3
+    assertThat(((Number) org.get(OrganizationAdminAuth.COMPACT_DEFAULT_ROLES)).intValue(), is(9));
+    assertThat(org.containsKey(OrganizationAdminAuth.COMPACT_NAME), is(false));
+    assertThat(org.containsKey(OrganizationAdminAuth.COMPACT_CUSTOM_ROLES), is(false));
+    assertEquals(roles, OrganizationAdminAuth.decodeOrganizationRoles(org));
+
+    // change authorization
+    keycloak =
+        getKeycloak(REALM, ADMIN_CLI, container.getAdminUsername(), container.getAdminPassword());
+    // delete mapper
+    keycloak.realm(REALM).clients().get(client.getId()).getProtocolMappers().delete(mapperId);
+    // delete user
+    deleteUser(keycloak, REALM, user.getId());
+    // delete organization
+    deleteOrganization(keycloak, id);
+  }
+
+  @Test
+  void shouldAuthorizeOrganizationRolesFromTrustedTokensOnly() throws Exception {
+    // add org
+    String id = createDefaultOrg().getId();
+
+    final UserRepresentation user = createUserWithCredentials(keycloak, REALM, "jdoe", "pass");
+
+    Response response = putRequest("foo", id, "members", user.getId());
+    assertThat(response.getStatusCode(), is(Status.CREATED.getStatusCode()));
+    grantUserRole(id, OrganizationAdminAuth.ORG_ROLE_MANAGE_ORGANIZATION, user.getId());
+
+    RealmResource realm = keycloak.realm(REALM);
+    ClientRepresentation client = realm.clients().findByClientId(ADMIN_CLI).get(0);
+    String mapperId = configureCustomOidcProtocolMapper(realm, client, new HashMap<>());
+    setTokenRoles(realm, "true", ADMIN_CLI, "3600");
+
+    Keycloak kc = getKeycloak(REALM, ADMIN_CLI, user.getUsername(), "pass");
+    // the role is in the token. revoke it from the database
+    revokeUserRole(id, OrganizationAdminAuth.ORG_ROLE_MANAGE_ORGANIZATION, user.getId());
+    OrganizationRepresentation org = new OrganizationRepresentation().name("example");
+
+    // enabled, the role in the token is honored
+    response = putRequest(kc, org, id);
+    assertThat(response.getStatusCode(), is(Status.NO_CONTENT.getStatusCode()));
+
+    // disabled
+    setTokenRoles(realm, "false", ADMIN_CLI, "3600");
+    response = putRequest(kc, org, id);
+    assertThat(response.getStatusCode(), is(Status.UNAUTHORIZED.getStatusCode()));
+
+    // client is not trusted
+    setTokenRoles(realm, "true", "other-client", "3600");
+    response = putRequest(kc, org, id);
+    assertThat(response.getStatusCode(), is(Status.UNAUTHORIZED.getStatusCode()));
+
+    // tokens older than the max age are covered with an explicit time by TokenRolesPolicyTest
+
+    // claim forged by another mapper
+    realm.clients().get(client.getId()).getProtocolMappers().delete(mapperId);
+    mapperId = configureHardcodedOrganizationsClaim(realm, client, id);
+    setTokenRoles(realm, "true", ADMIN_CLI, "3600");
+    kc = getKeycloak(REALM, ADMIN_CLI, user.getUsername(), "pass");
+    AccessToken accessToken =
+        TokenVerifier.create(kc.tokenManager().getAccessTokenString(), AccessToken.class)
+            .parse()
+            .getToken();
+    Map<String, Object> forged = (Map<String, Object>) accessToken.getOtherClaims().get(CLAIM);
+    assertNotNull(forged);
+    assertThat(forged.containsKey(id), is(true));
+    response = putRequest(kc, org, id);
+    assertThat(response.getStatusCode(), is(Status.UNAUTHORIZED.getStatusCode()));
+
+    // reset realm
+    setTokenRoles(realm, "false", "", String.valueOf(60));
+    // delete mapper
+    realm.clients().get(client.getId()).getProtocolMappers().delete(mapperId);
+    // delete user
+    deleteUser(keycloak, REALM, user.getId());
+    // delete organization
+    deleteOrganization(keycloak, id);
+  }
+
+  private static void setTokenRoles(
+      RealmResource realm, String enabled, String clients, String maxAge) {
+    RealmRepresentation rep = realm.toRepresentation();
+    rep.getAttributes().put(ORG_AUTH_TOKEN_ROLES_KEY, enabled);
+    rep.getAttributes().put(ORG_AUTH_TOKEN_ROLES_CLIENTS_KEY, clients);
+    rep.getAttributes().put(ORG_AUTH_TOKEN_ROLES_MAX_AGE_KEY, maxAge);
+    realm.update(rep);
+  }
+
+  private static String configureHardcodedOrganizationsClaim(
+      RealmResource realm, ClientRepresentation client, String orgId) {
+    ProtocolMapperRepresentation mapper = new ProtocolMapperRepresentation();
+    mapper.setProtocol(OIDCLoginProtocol.LOGIN_PROTOCOL);
+    mapper.setProtocolMapper(HardcodedClaim.PROVIDER_ID);
+    mapper.setName("test-oidc-forged-organizations");
+
+    Map<String, String> config = new HashMap<>();
+    config.put(OIDCAttributeMapperHelper.TOKEN_CLAIM_NAME, CLAIM);
+    config.put(
+        HardcodedClaim.CLAIM_VALUE,
+        String.format("{\"%s\": {\"roles\": [\"manage-organization\"]}}", orgId));
+    config.put(OIDCAttributeMapperHelper.JSON_TYPE, "JSON");
+    config.put(OIDCAttributeMapperHelper.INCLUDE_IN_ACCESS_TOKEN, "true");
+    mapper.setConfig(config);
+
+    try (jakarta.ws.rs.core.Response response =
+        realm.clients().get(client.getId()).getProtocolMappers().createMapper(mapper)) {
+      return CreatedResponseUtil.getCreatedId(response);
+    }
+  }
+
+  private static String configureCustomOidcProtocolMapper(
+      RealmResource realm, ClientRepresentation client, Map<String, String> config) {
     ProtocolMapperRepresentation mapper = new ProtocolMapperRepresentation();
     mapper.setProtocol(OIDCLoginProtocol.LOGIN_PROTOCOL);
     mapper.setProtocolMapper(OrganizationRoleMapper.PROVIDER_ID);
     mapper.setName("test-oidc-company-role-mapper");
 
-    Map<String, String> config = new HashMap<>();
     config.put(OIDCAttributeMapperHelper.TOKEN_CLAIM_NAME, CLAIM);
     config.put(OIDCAttributeMapperHelper.INCLUDE_IN_ACCESS_TOKEN, "true");
     mapper.setConfig(config);
 
-    realm.clients().get(client.getId()).getProtocolMappers().createMapper(mapper).close();
+    try (jakarta.ws.rs.core.Response response =
+        realm.clients().get(client.getId()).getProtocolMappers().createMapper(mapper)) {
+      return CreatedResponseUtil.getCreatedId(response);
+    }
   }
 }
@@ -0,0 +1,64 @@
+package io.phasetwo.service.model.infinispan;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.jupiter.api.Test;
+
+class DomainTrieTest {
+
+  @Test
+  void shouldMatchNearestParentDomain() {
+    DomainTrie trie = new DomainTrie();
+    trie.add("example.com", "org1", true);
+    trie.add("corp.example.com", "org2", true);
+
+    assertThat(trie.getNearestOrganizationIds("example.com", false), contains("org1"));
+    assertThat(trie.getNearestOrganizationIds("corp.example.com", false), contains("org2"));
+    assertThat(trie.getNearestOrganizationIds("eu.corp.example.com", false), contains("org2"));
+    assertThat(trie.getNearestOrganizationIds("sales.example.com", false), contains("org1"));
+    assertThat(trie.getNearestOrganizationIds("example.org", false), empty());
+  }
+
+  @Test
+  void shouldNotMatchAboveRegistrableDomain() {
+    DomainTrie trie = new DomainTrie();
+    trie.add("co.uk", "org1", true);
+    trie.add("example.co.uk", "org2", true);
+
+    assertThat(trie.getNearestOrganizationIds("other.co.uk", false), empty());
+    assertThat(trie.getNearestOrganizationIds("eu.example.co.uk", false), contains("org2"));
+    assertThat(trie.getNearestOrganizationIds("co.uk", false), empty());
+  }
+
+  @Test
+  void shouldContainOnlyOwnedDomains() {
+    DomainTrie trie = new DomainTrie();
+    trie.add("corp.example.com", "org1", false);
+
+    assertThat(trie.contains("corp.example.com"), is(true));
+    assertThat(trie.contains("example.com"), is(false));
+    assertThat(trie.contains("eu.corp.example.com"), is(false));
+    assertThat(trie.contains("gmail.com"), is(false));
+  }
+
+  @Test
+  void shouldSkipUnverifiedDomainsWhenVerifiedRequired() {
+    DomainTrie trie = new DomainTrie();
+    trie.add("example.com", "org1", true);
+    trie.add("corp.example.com", "org2", false);
+
+    assertThat(trie.getNearestOrganizationIds("eu.corp.example.com", false), contains("org2"));
+    assertThat(trie.getNearestOrganizationIds("eu.corp.example.com", true), contains("org1"));
+  }
+
+  @Test
+  void shouldNotMatchTopLevelDomains() {
+    DomainTrie trie = new DomainTrie();
+    trie.add("com", "org1", true);
+
+    assertThat(trie.getNearestOrganizationIds("example.com", false), empty());
+  }
+}
@@ -0,0 +1,50 @@
+package io.phasetwo.service.model.infinispan;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class InvitationFilterTest {
+
+  @Test
+  void shouldMatchInvitedEmails() {
+    InvitationFilter filter = new InvitationFilter(List.of("Jane@Example.com"));
+    filter.put(" john@example.com ");
+
+    assertThat(filter.mightHaveInvitation("jane@example.com"), is(true));
+    assertThat(filter.mightHaveInvitation("JOHN@example.com"), is(true));
+    int falsePositives = 0;
+    for (int i = 0; i < 1000; i++) {
+      if (filter.mightHaveInvitation("user" + i + "@example.com")) falsePositives++;
+    }
+    assertThat(falsePositives, lessThan(50));
+  }
+
+  @Test
+  void shouldBeStaleWhenOlderThanMaxAge() {
+    InvitationFilter filter = new InvitationFilter(List.of("jane@example.com"));
+    assertThat(filter.isStale(3600), is(false));
+    assertThat(filter.isStale(-1), is(true));
+  }
+
+  @Test
+  void shouldBeStaleWhenOverfilled() {
+    InvitationFilter filter = new InvitationFilter(List.of());
+    for (int i = 0; i < 2 * InvitationFilter.MIN_EXPECTED_INSERTIONS; i++) {
+      filter.put("user" + i + "@example.com");
+    }
+    assertThat(filter.isStale(3600), is(true));
+  }
+
+  @Test
+  void shouldLetOneSessionClaimTheRebuild() {
+    InvitationFilter filter = new InvitationFilter(List.of());
+    assertThat(filter.claimRebuild(), is(true));
+    assertThat(filter.claimRebuild(), is(false));
+    filter.releaseRebuild();
+    assertThat(filter.claimRebuild(), is(true));
+  }
+}
@@ -0,0 +1,142 @@
+package io.phasetwo.service.model.infinispan;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class OrganizationCacheManagerTest {
+
+  private DefaultCacheManager cacheManager;
+  private OrganizationCacheManager manager;
+
+  @BeforeEach
+  void setup() {
+    cacheManager = new DefaultCacheManager();
+    cacheManager.defineConfiguration("orgs", new ConfigurationBuilder().build());
+    Cache<String, Object> cache = cacheManager.getCache("orgs");
+    manager = new OrganizationCacheManager(cache, 3600);
+  }
+
+  @AfterEach
+  void teardown() {
+    cacheManager.stop();
+  }
+
+  @Test
+  void shouldAddEntryWhenOtherKeysAreInvalidated() {
+    long start = manager.getCurrentRevision();
+    manager.invalidate(List.of("realm2.domains", "org2"), Set.of());
+
+    manager.addRevisioned("realm1.domains", "trie", start);
+    assertThat(manager.get("realm1.domains", String.class), is("trie"));
+  }
+
+  @Test
+  void shouldKeepDomainIndexWhenOtherRealmsDomainsChange() {
+    String realm1Domains = InfinispanOrganizationProvider.domainsKey("realm1");
+    manager.addRevisioned(realm1Domains, "trie", manager.getCurrentRevision());
+    long start = manager.getCurrentRevision();
+
+    // what registerDomainInvalidation sends for a domain of another realm
+    manager.invalidate(
+        List.of(
+            InfinispanOrganizationProvider.domainKey("realm2", "example.com"),
+            InfinispanOrganizationProvider.domainsKey("realm2")),
+        Set.of());
+    assertThat(manager.get(realm1Domains, String.class), is("trie"));
+    manager.addRevisioned(realm1Domains, "rebuilt", start);
+    assertThat(manager.get(realm1Domains, String.class), is("rebuilt"));
+
+    // and for a domain of the same realm
+    manager.invalidate(
+        List.of(InfinispanOrganizationProvider.domainKey("realm1", "example.com"), realm1Domains),
+        Set.of());
+    assertThat(manager.get(realm1Domains, String.class), nullValue());
+    manager.addRevisioned(realm1Domains, "stale", start);
+    assertThat(manager.get(realm1Domains, String.class), nullValue());
+  }
+
+  @Test
+  void shouldRejectEntryInvalidatedSinceSessionStarted() {
+    long start = manager.getCurrentRevision();
+    manager.invalidate(List.of("org1"), Set.of());
+
+    manager.addRevisioned("org1", "stale", start);
+    assertThat(manager.get("org1", String.class), nullValue());
+
+    // a session that started after the invalidation may cache it again
+    manager.addRevisioned("org1", "fresh", manager.getCurrentRevision());
+    assertThat(manager.get("org1", String.class), is("fresh"));
+  }
+
+  @Test
+  void shouldRejectMembershipsWhenOrganizationMembershipsInvalidated() {
+    long start = manager.getCurrentRevision();
+    manager.invalidate(List.of(), Set.of("org1"));
+
+    manager.addRevisioned(
+        "user1.memberships", "stale", start, OrganizationCacheManager.ORGANIZATION_MEMBERSHIPS);
+    assertThat(manager.get("user1.memberships", String.class), nullValue());
+    manager.addRevisioned("org2", "org", start);
+    assertThat(manager.get("org2", String.class), is("org"));
+  }
+
+  @Test
+  void shouldRejectOlderSessionsAfterRevisionsArePruned() {
+    long start = manager.getCurrentRevision();
+    manager.invalidate(List.of("org1"), Set.of());
+    for (int i = 0; i <= OrganizationCacheManager.MAX_REVISIONS; i++) {
+      manager.invalidate(List.of("key" + i), Set.of());
+    }
+
+    manager.addRevisioned("org1", "stale", start);
+    assertThat(manager.get("org1", String.class), nullValue());
+    manager.addRevisioned("org1", "fresh", manager.getCurrentRevision());
+    assertThat(manager.get("org1", String.class), is("fresh"));
+  }
+
+  @Test
+  void shouldReturnStaleInvitationFilterToAllButTheRebuildingSession() {
+    Cache<String, Object> cache = cacheManager.getCache("orgs");
+    // every filter is stale
+    OrganizationCacheManager stale = new OrganizationCacheManager(cache, -1);
+    InvitationFilter filter = new InvitationFilter(List.of("jane@example.com"));
+    long start = stale.getInvitationRevision();
+    assertThat(stale.putInvitationFilter("realm1", filter, start), is(true));
+
+    // the first session claims the rebuild, the others keep using the stale filter
+    assertThat(stale.getInvitationFilter("realm1"), nullValue());
+    assertThat(stale.getInvitationFilter("realm1"), is(filter));
+
+    // a failed rebuild releases the claim, so the next session tries again
+    stale.releaseInvitationFilterRebuild("realm1");
+    assertThat(stale.getInvitationFilter("realm1"), nullValue());
+  }
+
+  @Test
+  void shouldDiscardInvitationFilterBuiltBeforeAnInvitationWasAdded() {
+    long start = manager.getInvitationRevision();
+    InvitationFilter filter = new InvitationFilter(List.of());
+    manager.addInvitations(Map.of("realm1", List.of("jane@example.com")));
+
+    assertThat(manager.putInvitationFilter("realm1", filter, start), is(false));
+    assertThat(manager.getInvitationFilter("realm1"), nullValue());
+
+    start = manager.getInvitationRevision();
+    filter = new InvitationFilter(List.of("jane@example.com"));
+    assertThat(manager.putInvitationFilter("realm1", filter, start), is(true));
+    manager.addInvitations(Map.of("realm1", List.of("john@example.com")));
+    filter = manager.getInvitationFilter("realm1");
+    assertThat(filter.mightHaveInvitation("john@example.com"), is(true));
+  }
+}
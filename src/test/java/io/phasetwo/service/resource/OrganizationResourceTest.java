@@ -10,16 +10,21 @@ import static io.phasetwo.service.Helpers.deleteWebhook;
 import static io.phasetwo.service.Helpers.objectMapper;
 import static io.phasetwo.service.Helpers.removeEventListener;
 import static io.phasetwo.service.Orgs.ACTIVE_ORGANIZATION;
+import static io.phasetwo.service.Orgs.ORG_OWNER_CONFIG_KEY;
 import static io.phasetwo.service.protocol.oidc.mappers.ActiveOrganizationMapper.INCLUDED_ORGANIZATION_PROPERTIES;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.everyItem;
 import static org.hamcrest.Matchers.hasEntry;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.hasKey;
 import static org.hamcrest.Matchers.hasProperty;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.oneOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -38,6 +43,8 @@ import io.phasetwo.client.openapi.model.OrganizationRepresentation;
 import io.phasetwo.client.openapi.model.OrganizationRoleRepresentation;
 import io.phasetwo.client.openapi.model.PortalLinkRepresentation;
 import io.phasetwo.service.AbstractOrganizationTest;
+import io.phasetwo.service.SmtpSink;
+import io.phasetwo.service.representation.BulkResponseItem;
 import io.phasetwo.service.representation.Invitation;
 import io.phasetwo.service.representation.InvitationRequest;
 import io.phasetwo.service.representation.LinkIdp;
@@ -45,11 +52,13 @@ import io.phasetwo.service.representation.OrganizationRole;
 import io.phasetwo.service.representation.SwitchOrganization;
 import io.restassured.http.Header;
 import io.restassured.response.Response;
+import io.restassured.specification.RequestSpecification;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response.Status;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import lombok.extern.jbosslog.JBossLog;
@@ -59,10 +68,12 @@ import org.hamcrest.CoreMatchers;
 import org.junit.jupiter.api.Test;
 import org.keycloak.TokenVerifier;
 import org.keycloak.admin.client.Keycloak;
+import org.keycloak.admin.client.resource.RealmResource;
 import org.keycloak.broker.provider.util.SimpleHttp;
 import org.keycloak.common.VerificationException;
 import org.keycloak.representations.AccessToken;
 import org.keycloak.representations.idm.ClientRepresentation;
+import org.keycloak.representations.idm.RealmRepresentation;
 import org.keycloak.representations.idm.UserRepresentation;
 import org.keycloak.util.JsonSerialization;
 
@@ -274,6 +285,89 @@ class OrganizationResourceTest extends AbstractOrganizationTest {
     }
   }
 
+  @Test
+  void testSearchOrganizationsByAttributes() throws IOException {
+    List<String> ids = new ArrayList<>();
+    ids.add(
+        createOrganization(
+                new OrganizationRepresentation()
+                    .name("attrs-1")
+                    .attributes(Map.of("tier", List.of("gold"), "region", List.of("EU"))))
+            .getId());
+    ids.add(
+        createOrganization(
+                new OrganizationRepresentation()
+                    .name("attrs-2")
+                    .attributes(Map.of("tier", List.of("gold"), "region", List.of("US"))))
+            .getId());
+
+    Response response = givenSpec().when().queryParam("q", "tier:gold").get().andReturn();
+    assertThat(response.statusCode(), is(Status.OK.getStatusCode()));
+    List<OrganizationRepresentation> orgs =
+        objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+    assertThat(orgs, hasSize(2));
+
+    // every attribute must match, values case-insensitively
+    response = givenSpec().when().queryParam("q", "tier:gold region:eu").get().andReturn();
+    assertThat(response.statusCode(), is(Status.OK.getStatusCode()));
+    orgs = objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+    assertThat(orgs, hasSize(1));
+    assertThat(orgs.get(0).getName(), is("attrs-1"));
+
+    // attribute names are case-insensitive too
+    response = givenSpec().when().queryParam("q", "Tier:gold REGION:eu").get().andReturn();
+    assertThat(response.statusCode(), is(Status.OK.getStatusCode()));
+    orgs = objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+    assertThat(orgs, hasSize(1));
+    assertThat(orgs.get(0).getName(), is("attrs-1"));
+
+    response = givenSpec().when().queryParam("q", "tier:silver region:eu").get().andReturn();
+    assertThat(response.statusCode(), is(Status.OK.getStatusCode()));
+    orgs = objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+    assertThat(orgs, empty());
+
+    for (String id : ids) {
+      deleteOrganization(id);
+    }
+  }
+
+  @Test
+  void testListOrganizationsWithCursor() throws IOException {
+    List<String> ids = new ArrayList<>();
+    for (String name : List.of("cursor-e", "cursor-b", "cursor-d", "cursor-a", "cursor-c")) {
+      ids.add(createOrganization(new OrganizationRepresentation().name(name)).getId());
+    }
+
+    List<String> names = new ArrayList<>();
+    String cursor = "";
+    int pages = 0;
+    while (cursor != null) {
+      Response response =
+          givenSpec()
+              .when()
+              .queryParam("search", "cursor-")
+              .queryParam("max", 2)
+              .queryParam("cursor", cursor)
+              .get()
+              .andReturn();
+      assertThat(response.statusCode(), is(Status.OK.getStatusCode()));
+      List<OrganizationRepresentation> orgs =
+          objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+      orgs.forEach(o -> names.add(o.getName()));
+      cursor = response.getHeader("X-Next-Cursor");
+      pages++;
+    }
+    assertThat(pages, is(3));
+    assertThat(names, contains("cursor-a", "cursor-b", "cursor-c", "cursor-d", "cursor-e"));
+
+    Response response = givenSpec().when().queryParam("cursor", "not a cursor").get().andReturn();
+    assertThat(response.statusCode(), is(Status.BAD_REQUEST.getStatusCode()));
+
+    for (String id : ids) {
+      deleteOrganization(id);
+    }
+  }
+
   @Test
   void testGetDomains() throws IOException {
 
@@ -394,6 +488,277 @@ class OrganizationResourceTest extends AbstractOrganizationTest {
     deleteOrganization(org.getId());
   }
 
+  @Test
+  void testCachedReadsSeeWrites() throws IOException {
+    OrganizationRepresentation org = createDefaultOrg();
+    String id = org.getId();
+    UserRepresentation user = createUser(keycloak, REALM, "cacheduser");
+
+    // load the organization and the user's memberships into the cache
+    Response response = getRequest(id);
+    assertThat(response.getStatusCode(), is(Status.OK.getStatusCode()));
+    response = givenSpec("users", user.getId(), "orgs").when().get().then().extract().response();
+    List<OrganizationRepresentation> orgs =
+        objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+    assertThat(orgs, empty());
+
+    // each write is seen by the next request
+    org.displayName("Cached company");
+    response = putRequest(org, id);
+    assertThat(response.statusCode(), is(Status.NO_CONTENT.getStatusCode()));
+    response = getRequest(id);
+    OrganizationRepresentation rep =
+        objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+    assertThat(rep.getDisplayName(), is("Cached company"));
+
+    response = putRequest("foo", id, "members", user.getId());
+    assertThat(response.getStatusCode(), is(Status.CREATED.getStatusCode()));
+    response = givenSpec("users", user.getId(), "orgs").when().get().then().extract().response();
+    orgs = objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+    assertThat(orgs, hasSize(1));
+
+    response = deleteRequest(id, "members", user.getId());
+    assertThat(response.getStatusCode(), is(Status.NO_CONTENT.getStatusCode()));
+    response = givenSpec("users", user.getId(), "orgs").when().get().then().extract().response();
+    orgs = objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+    assertThat(orgs, empty());
+
+    deleteUser(keycloak, REALM, user.getId());
+    deleteOrganization(id);
+  }
+
+  @Test
+  void testMemberCanViewOrganization() throws IOException {
+    OrganizationRepresentation org = createDefaultOrg();
+    String id = org.getId();
+    UserRepresentation member = createUserWithCredentials(keycloak, REALM, "viewmember", "pass");
+    UserRepresentation other = createUserWithCredentials(keycloak, REALM, "viewother", "pass");
+    Response response = putRequest("foo", id, "members", member.getId());
+    assertThat(response.getStatusCode(), is(Status.CREATED.getStatusCode()));
+
+    // a member without any organization roles can view the organization
+    Keycloak memberKeycloak = getKeycloak(REALM, ADMIN_CLI, "viewmember", "pass");
+    response = getRequest(memberKeycloak, id);
+    assertThat(response.getStatusCode(), is(Status.OK.getStatusCode()));
+    response = getRequest(memberKeycloak, "");
+    assertThat(response.getStatusCode(), is(Status.OK.getStatusCode()));
+    List<OrganizationRepresentation> orgs =
+        objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+    assertThat(orgs, hasSize(1));
+    assertThat(orgs.get(0).getId(), is(id));
+
+    // a user who isn't a member can't
+    Keycloak otherKeycloak = getKeycloak(REALM, ADMIN_CLI, "viewother", "pass");
+    response = getRequest(otherKeycloak, id);
+    assertThat(response.getStatusCode(), is(Status.UNAUTHORIZED.getStatusCode()));
+    response = getRequest(otherKeycloak, "");
+    orgs = objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+    assertThat(orgs, empty());
+
+    // nor can a removed member
+    response = deleteRequest(id, "members", member.getId());
+    assertThat(response.getStatusCode(), is(Status.NO_CONTENT.getStatusCode()));
+    response = getRequest(memberKeycloak, id);
+    assertThat(response.getStatusCode(), is(Status.UNAUTHORIZED.getStatusCode()));
+
+    deleteUser(keycloak, REALM, member.getId());
+    deleteUser(keycloak, REALM, other.getId());
+    deleteOrganization(id);
+  }
+
+  @Test
+  void testAddMembersBulk() throws IOException {
+    OrganizationRepresentation org = createDefaultOrg();
+    UserRepresentation user1 = createUser(keycloak, REALM, "bulkmember1");
+    UserRepresentation user2 = createUser(keycloak, REALM, "bulkmember2");
+
+    // already a member
+    Response response = putRequest("foo", org.getId(), "members", user1.getId());
+    assertThat(response.getStatusCode(), is(Status.CREATED.getStatusCode()));
+
+    response =
+        putRequest(
+            List.of(user1.getId(), user2.getId(), "nonexistent", user2.getId()),
+            org.getId(),
+            "members");
+    assertThat(response.getStatusCode(), is(207));
+    List<BulkResponseItem> items =
+        objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+    assertThat(items, hasSize(4));
+    assertThat(items.get(0).getStatus(), is(Status.CREATED.getStatusCode()));
+    assertThat(items.get(1).getStatus(), is(Status.CREATED.getStatusCode()));
+    assertThat(items.get(2).getStatus(), is(Status.NOT_FOUND.getStatusCode()));
+    assertThat(items.get(3).getStatus(), is(Status.CREATED.getStatusCode()));
+
+    response = getRequest(org.getId(), "members", "count");
+    Long memberCount = objectMapper().readValue(response.getBody().asString(), Long.class);
+    assertThat(memberCount, is(3L)); // org admin default and both users
+
+    response = getRequest(org.getId(), "members", user2.getId());
+    assertThat(response.getStatusCode(), is(Status.NO_CONTENT.getStatusCode()));
+
+    response = putRequest(keycloak, null, String.join("/", org.getId(), "members"));
+    assertThat(response.getStatusCode(), is(Status.BAD_REQUEST.getStatusCode()));
+
+    deleteUser(keycloak, REALM, user1.getId());
+    deleteUser(keycloak, REALM, user2.getId());
+    deleteOrganization(org.getId());
+  }
+
+  @Test
+  void testRemoveMembersBulk() throws IOException {
+    OrganizationRepresentation org = createDefaultOrg();
+    UserRepresentation user1 = createUser(keycloak, REALM, "bulkmember1");
+    UserRepresentation user2 = createUser(keycloak, REALM, "bulkmember2");
+    UserRepresentation user3 = createUser(keycloak, REALM, "bulkmember3");
+
+    Response response = putRequest(List.of(user1.getId(), user2.getId()), org.getId(), "members");
+    assertThat(response.getStatusCode(), is(207));
+
+    // a role mapping that should be removed with the membership
+    OrganizationRoleRepresentation role = createOrgRole(org.getId(), "bulk-role");
+    grantUserRole(org.getId(), role.getName(), user1.getId());
+
+    response =
+        patchRequest(
+            List.of(user1.getId(), user2.getId(), user3.getId(), "nonexistent"),
+            String.join("/", org.getId(), "members"));
+    assertThat(response.getStatusCode(), is(207));
+    List<BulkResponseItem> items =
+        objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+    assertThat(items, hasSize(4));
+    assertThat(items.get(0).getStatus(), is(Status.NO_CONTENT.getStatusCode()));
+    assertThat(items.get(1).getStatus(), is(Status.NO_CONTENT.getStatusCode()));
+    assertThat(items.get(2).getStatus(), is(Status.NOT_FOUND.getStatusCode()));
+    assertThat(items.get(3).getStatus(), is(Status.NOT_FOUND.getStatusCode()));
+
+    response = getRequest(org.getId(), "members", "count");
+    Long memberCount = objectMapper().readValue(response.getBody().asString(), Long.class);
+    assertThat(memberCount, is(1L)); // org admin default
+
+    checkUserRole(org.getId(), role.getName(), user1.getId(), Status.NOT_FOUND.getStatusCode());
+
+    response = patchRequest(null, String.join("/", org.getId(), "members"));
+    assertThat(response.getStatusCode(), is(Status.BAD_REQUEST.getStatusCode()));
+
+    deleteUser(keycloak, REALM, user1.getId());
+    deleteUser(keycloak, REALM, user2.getId());
+    deleteUser(keycloak, REALM, user3.getId());
+    deleteOrganization(org.getId());
+  }
+
+  @Test
+  void testGrantRevokeRoleUsersBulk() throws IOException {
+    OrganizationRepresentation org = createDefaultOrg();
+    UserRepresentation user1 = createUser(keycloak, REALM, "bulkrole1");
+    UserRepresentation user2 = createUser(keycloak, REALM, "bulkrole2");
+    UserRepresentation user3 = createUser(keycloak, REALM, "bulkrole3");
+    OrganizationRoleRepresentation role = createOrgRole(org.getId(), "bulk-role");
+
+    Response response = putRequest(List.of(user1.getId(), user2.getId()), org.getId(), "members");
+    assertThat(response.getStatusCode(), is(207));
+    // already has the role
+    grantUserRole(org.getId(), role.getName(), user1.getId());
+
+    response =
+        putRequest(
+            List.of(user1.getId(), user2.getId(), user3.getId(), "nonexistent"),
+            org.getId(),
+            "roles",
+            role.getName(),
+            "users");
+    assertThat(response.getStatusCode(), is(207));
+    List<BulkResponseItem> items =
+        objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+    assertThat(items, hasSize(4));
+    assertThat(items.get(0).getStatus(), is(Status.CREATED.getStatusCode()));
+    assertThat(items.get(1).getStatus(), is(Status.CREATED.getStatusCode()));
+    assertThat(items.get(2).getStatus(), is(Status.BAD_REQUEST.getStatusCode())); // not a member
+    assertThat(items.get(3).getStatus(), is(Status.NOT_FOUND.getStatusCode()));
+    checkUserRole(org.getId(), role.getName(), user2.getId(), Status.NO_CONTENT.getStatusCode());
+    checkUserRole(org.getId(), role.getName(), user3.getId(), Status.NOT_FOUND.getStatusCode());
+
+    response =
+        patchRequest(
+            List.of(user1.getId(), user3.getId()),
+            String.join("/", org.getId(), "roles", role.getName(), "users"));
+    assertThat(response.getStatusCode(), is(207));
+    items = objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+    assertThat(items, hasSize(2));
+    assertThat(items.get(0).getStatus(), is(Status.NO_CONTENT.getStatusCode()));
+    assertThat(items.get(1).getStatus(), is(Status.NOT_FOUND.getStatusCode()));
+    checkUserRole(org.getId(), role.getName(), user1.getId(), Status.NOT_FOUND.getStatusCode());
+    checkUserRole(org.getId(), role.getName(), user2.getId(), Status.NO_CONTENT.getStatusCode());
+
+    String usersPath = String.join("/", org.getId(), "roles", role.getName(), "users");
+    response = putRequest(keycloak, null, usersPath);
+    assertThat(response.getStatusCode(), is(Status.BAD_REQUEST.getStatusCode()));
+    response = patchRequest(null, usersPath);
+    assertThat(response.getStatusCode(), is(Status.BAD_REQUEST.getStatusCode()));
+
+    deleteUser(keycloak, REALM, user1.getId());
+    deleteUser(keycloak, REALM, user2.getId());
+    deleteUser(keycloak, REALM, user3.getId());
+    deleteOrganization(org.getId());
+  }
+
+  @Test
+  void testSetMembersRoles() throws IOException {
+    OrganizationRepresentation org = createDefaultOrg();
+    UserRepresentation user1 = createUser(keycloak, REALM, "setroles1");
+    UserRepresentation user2 = createUser(keycloak, REALM, "setroles2");
+    createOrgRole(org.getId(), "eat-apples");
+    createOrgRole(org.getId(), "bake-pies");
+
+    Response response = putRequest(List.of(user1.getId(), user2.getId()), org.getId(), "members");
+    assertThat(response.getStatusCode(), is(207));
+    grantUserRole(org.getId(), "eat-apples", user1.getId());
+
+    Map<String, List<String>> roles = new LinkedHashMap<>();
+    roles.put(user1.getId(), List.of("bake-pies"));
+    roles.put(user2.getId(), List.of("eat-apples", "bake-pies"));
+    roles.put("nonexistent", List.of());
+    response = putRequest(roles, org.getId(), "members", "roles");
+    assertThat(response.getStatusCode(), is(207));
+    List<BulkResponseItem> items =
+        objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+    assertThat(items, hasSize(3));
+    assertThat(items.get(0).getStatus(), is(Status.OK.getStatusCode()));
+    assertThat(items.get(1).getStatus(), is(Status.OK.getStatusCode()));
+    assertThat(items.get(2).getStatus(), is(Status.NOT_FOUND.getStatusCode()));
+    checkUserRole(org.getId(), "eat-apples", user1.getId(), Status.NOT_FOUND.getStatusCode());
+    checkUserRole(org.getId(), "bake-pies", user1.getId(), Status.NO_CONTENT.getStatusCode());
+    checkUserRole(org.getId(), "eat-apples", user2.getId(), Status.NO_CONTENT.getStatusCode());
+    checkUserRole(org.getId(), "bake-pies", user2.getId(), Status.NO_CONTENT.getStatusCode());
+
+    // unknown roles leave the user unchanged, and are all reported
+    response =
+        putRequest(
+            Map.of(user2.getId(), List.of("view-fair", "eat-apples", "ride-ponies")),
+            org.getId(),
+            "members",
+            "roles");
+    items = objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+    assertThat(items.get(0).getStatus(), is(Status.BAD_REQUEST.getStatusCode()));
+    assertThat(items.get(0).getError(), containsString("view-fair, ride-ponies"));
+    checkUserRole(org.getId(), "eat-apples", user2.getId(), Status.NO_CONTENT.getStatusCode());
+
+    // so do missing roles
+    roles.clear();
+    roles.put(user2.getId(), null);
+    response = putRequest(roles, org.getId(), "members", "roles");
+    items = objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+    assertThat(items.get(0).getStatus(), is(Status.BAD_REQUEST.getStatusCode()));
+    checkUserRole(org.getId(), "eat-apples", user2.getId(), Status.NO_CONTENT.getStatusCode());
+
+    response = putRequest(keycloak, null, String.join("/", org.getId(), "members", "roles"));
+    assertThat(response.getStatusCode(), is(Status.BAD_REQUEST.getStatusCode()));
+
+    deleteUser(keycloak, REALM, user1.getId());
+    deleteUser(keycloak, REALM, user2.getId());
+    deleteOrganization(org.getId());
+  }
+
   @Test
   void testAddGetDeleteMemberships() throws IOException {
     OrganizationRepresentation org = createDefaultOrg();
@@ -452,6 +817,73 @@ class OrganizationResourceTest extends AbstractOrganizationTest {
     deleteOrganization(id);
   }
 
+  @Test
+  void testSearchAndPaginateMembers() throws IOException {
+    OrganizationRepresentation org = createDefaultOrg();
+    String id = org.getId();
+
+    List<String> userIds = new ArrayList<>();
+    for (String name : List.of("alice", "bob", "carol")) {
+      UserRepresentation user =
+          createUserWithCredentials(
+              keycloak, REALM, "search" + name, "pass", name + "@members.example.com");
+      userIds.add(user.getId());
+      Response response = putRequest("foo", id, "members", user.getId());
+      assertThat(response.getStatusCode(), is(Status.CREATED.getStatusCode()));
+    }
+    // not a member
+    UserRepresentation other =
+        createUserWithCredentials(
+            keycloak, REALM, "searchdave", "pass", "dave@members.example.com");
+
+    // by username
+    List<UserRepresentation> members = searchMembers(id, "searchb", null, null);
+    assertThat(members, hasSize(1));
+    assertThat(members.get(0).getUsername(), is("searchbob"));
+
+    // by email, ignoring case
+    members = searchMembers(id, "ALICE@MEMBERS", null, null);
+    assertThat(members, hasSize(1));
+    assertThat(members.get(0).getUsername(), is("searchalice"));
+
+    // only members match
+    members = searchMembers(id, "members.example.com", null, null);
+    assertThat(members, hasSize(3));
+    assertThat(members, everyItem(hasProperty("username", not(is("searchdave")))));
+
+    // search pages, in the order members were added
+    members = searchMembers(id, "members.example.com", 1, 1);
+    assertThat(members, hasSize(1));
+    assertThat(members.get(0).getUsername(), is("searchbob"));
+    members = searchMembers(id, "members.example.com", 3, 10);
+    assertThat(members, empty());
+
+    // list pages, after the default org admin
+    members = searchMembers(id, null, 1, 2);
+    assertThat(members, hasSize(2));
+    assertThat(members.get(0).getUsername(), is("searchalice"));
+    assertThat(members.get(1).getUsername(), is("searchbob"));
+    members = searchMembers(id, null, 0, 10);
+    assertThat(members, hasSize(4));
+
+    for (String userId : userIds) {
+      deleteUser(keycloak, REALM, userId);
+    }
+    deleteUser(keycloak, REALM, other.getId());
+    deleteOrganization(id);
+  }
+
+  private List<UserRepresentation> searchMembers(
+      String orgId, String search, Integer first, Integer max) throws IOException {
+    RequestSpecification spec = givenSpec().when();
+    if (search != null) spec = spec.queryParam("search", search);
+    if (first != null) spec = spec.queryParam("first", first);
+    if (max != null) spec = spec.queryParam("max", max);
+    Response response = spec.get(String.join("/", orgId, "members")).andReturn();
+    assertThat(response.getStatusCode(), is(Status.OK.getStatusCode()));
+    return objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+  }
+
   @Test
   void testDuplicateRoles() throws IOException {
     OrganizationRepresentation org = createDefaultOrg();
@@ -1080,6 +1512,92 @@ class OrganizationResourceTest extends AbstractOrganizationTest {
     deleteOrganization(org.getId());
   }
 
+  @Test
+  void testCreateInvitationsBulk() throws IOException {
+    OrganizationRepresentation org = createDefaultOrg();
+    String id = org.getId();
+    UserRepresentation member =
+        createUserWithCredentials(keycloak, REALM, "bulkinvite", "pass", "member@example.com");
+    Response response = putRequest("foo", id, "members", member.getId());
+    assertThat(response.getStatusCode(), is(Status.CREATED.getStatusCode()));
+    response = postRequest(new InvitationRequest().email("invited@example.com"), id, "invitations");
+    assertThat(response.statusCode(), is(Status.CREATED.getStatusCode()));
+
+    List<InvitationRequest> invitations =
+        List.of(
+            new InvitationRequest().email("new1@example.com").attribute("foo", "bar"),
+            new InvitationRequest().email("New2@example.com"),
+            new InvitationRequest().email("invited@example.com"),
+            new InvitationRequest().email("member@example.com"),
+            new InvitationRequest().email("new1@example.com"),
+            new InvitationRequest().email("not an email"),
+            new InvitationRequest().email("new3@example.com").role("unknown-role"));
+    response = putRequest(invitations, id, "invitations");
+    assertThat(response.getStatusCode(), is(207));
+    List<BulkResponseItem> items =
+        objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+    assertThat(items, hasSize(7));
+    assertThat(items.get(0).getStatus(), is(Status.CREATED.getStatusCode()));
+    assertThat(items.get(1).getStatus(), is(Status.CREATED.getStatusCode()));
+    assertThat(items.get(2).getStatus(), is(Status.CONFLICT.getStatusCode()));
+    assertThat(items.get(3).getStatus(), is(Status.CONFLICT.getStatusCode()));
+    assertThat(items.get(4).getStatus(), is(Status.CONFLICT.getStatusCode()));
+    assertThat(items.get(5).getStatus(), is(Status.BAD_REQUEST.getStatusCode()));
+    assertThat(items.get(6).getStatus(), is(Status.BAD_REQUEST.getStatusCode()));
+
+    response = getRequest(id, "invitations");
+    List<Invitation> invites =
+        objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+    assertThat(invites, hasSize(3));
+    Invitation invite =
+        invites.stream().filter(i -> i.getEmail().equals("new1@example.com")).findFirst().get();
+    assertThat(invite.getAttributes().get("foo").get(0), is("bar"));
+    assertThat(invites.stream().anyMatch(i -> i.getEmail().equals("new2@example.com")), is(true));
+
+    deleteUser(keycloak, REALM, member.getId());
+    deleteOrganization(id);
+  }
+
+  @Test
+  void testCreateInvitationsBulkSendsEmails() throws Exception {
+    OrganizationRepresentation org = createDefaultOrg();
+    String id = org.getId();
+    RealmResource realm = keycloak.realm(REALM);
+    RealmRepresentation rep = realm.toRepresentation();
+    Map<String, String> smtpServer = rep.getSmtpServer();
+    rep.setSmtpServer(
+        Map.of(
+            "host",
+            "host.testcontainers.internal",
+            "port",
+            String.valueOf(SMTP_SERVER_PORT),
+            "from",
+            "orgs@example.com"));
+    realm.update(rep);
+
+    try (SmtpSink smtp = new SmtpSink(SMTP_SERVER_PORT)) {
+      List<InvitationRequest> invitations =
+          List.of(
+              new InvitationRequest().email("send1@example.com").send(true),
+              new InvitationRequest().email("send2@example.com").send(true),
+              new InvitationRequest().email("nosend@example.com"));
+      Response response = putRequest(invitations, id, "invitations");
+      assertThat(response.getStatusCode(), is(207));
+
+      // the emails are sent from the executor, after the request
+      for (int i = 0; i < 50 && smtp.getMessages().size() < 2; i++) {
+        Thread.sleep(200);
+      }
+      assertThat(
+          smtp.getRecipients(), containsInAnyOrder("send1@example.com", "send2@example.com"));
+      assertThat(smtp.getMessages(), everyItem(containsString("has been invited to join example")));
+    } finally {
+      rep.setSmtpServer(smtpServer != null ? smtpServer : Map.of());
+      realm.update(rep);
+      deleteOrganization(id);
+    }
+  }
+
   @Test
   void testAddGetDeleteInvitations() throws IOException {
     OrganizationRepresentation org = createDefaultOrg();
@@ -1282,6 +1800,46 @@ class OrganizationResourceTest extends AbstractOrganizationTest {
     keycloak.realm(REALM).identityProviders().get(alias1).remove();
   }
 
+  @Test
+  void testIdpCreatedInRealmIsListed() throws IOException {
+    OrganizationRepresentation org = createDefaultOrg();
+    String id = org.getId();
+
+    // load the realm's identity provider index
+    Response response = getRequest(id, "idps");
+    assertThat(response.getStatusCode(), is(Status.OK.getStatusCode()));
+    List<IdentityProviderRepresentation> idps =
+        objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+    assertThat(idps, empty());
+
+    // create an idp owned by the org with the realm's endpoint, which sends no event
+    String alias = "realm-created-provider";
+    org.keycloak.representations.idm.IdentityProviderRepresentation idp =
+        new org.keycloak.representations.idm.IdentityProviderRepresentation();
+    idp.setAlias(alias);
+    idp.setProviderId("oidc");
+    idp.setEnabled(true);
+    idp.setConfig(
+        new ImmutableMap.Builder<String, String>()
+            .put(ORG_OWNER_CONFIG_KEY, id)
+            .put("authorizationUrl", "https://foo.com")
+            .put("tokenUrl", "https://foo.com")
+            .put("clientAuthMethod", "client_secret_post")
+            .put("clientId", "aabbcc")
+            .put("clientSecret", "112233")
+            .build());
+    keycloak.realm(REALM).identityProviders().create(idp).close();
+
+    response = getRequest(id, "idps");
+    assertThat(response.getStatusCode(), is(Status.OK.getStatusCode()));
+    idps = objectMapper().readValue(response.getBody().asString(), new TypeReference<>() {});
+    assertThat(idps, hasSize(1));
+    assertThat(idps.get(0).getAlias(), is(alias));
+
+    deleteOrganization(id);
+    keycloak.realm(REALM).identityProviders().get(alias).remove();
+  }
+
   @Test
   void testAddGetDeleteIdps() throws IOException {
     OrganizationRepresentation org = createDefaultOrg();
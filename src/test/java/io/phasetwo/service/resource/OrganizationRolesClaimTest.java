@@ -0,0 +1,37 @@
+package io.phasetwo.service.resource;
+
+import static io.phasetwo.service.resource.OrganizationAdminAuth.COMPACT_CUSTOM_ROLES;
+import static io.phasetwo.service.resource.OrganizationAdminAuth.COMPACT_DEFAULT_ROLES;
+import static io.phasetwo.service.resource.OrganizationAdminAuth.decodeOrganizationRoles;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class OrganizationRolesClaimTest {
+
+  @Test
+  void shouldDecodeDefaultAndCompactFormats() {
+    assertThat(
+        decodeOrganizationRoles(Map.of("roles", List.of("view-members", "eat-apples"))),
+        contains("view-members", "eat-apples"));
+    // view-organization is bit 0, manage-members is bit 3
+    Map<String, Object> compact =
+        Map.of(COMPACT_DEFAULT_ROLES, 9, COMPACT_CUSTOM_ROLES, List.of("x"));
+    assertThat(
+        decodeOrganizationRoles(compact), contains("view-organization", "manage-members", "x"));
+  }
+
+  @Test
+  void shouldHaveNoRolesWhenClaimIsMalformed() {
+    assertThat(decodeOrganizationRoles(Map.of("roles", "view-members")), empty());
+    assertThat(decodeOrganizationRoles(Map.of("roles", List.of(1, 2))), empty());
+    assertThat(decodeOrganizationRoles(Map.of(COMPACT_DEFAULT_ROLES, "9")), empty());
+    assertThat(
+        decodeOrganizationRoles(Map.of(COMPACT_DEFAULT_ROLES, 9, COMPACT_CUSTOM_ROLES, "x")),
+        empty());
+  }
+}
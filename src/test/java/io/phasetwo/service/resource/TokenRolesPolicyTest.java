@@ -0,0 +1,80 @@
+package io.phasetwo.service.resource;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.AccessToken;
+
+class TokenRolesPolicyTest {
+
+  private static final long NOW = 1_700_000_000L;
+  private static final TokenRolesPolicy ENABLED =
+      new TokenRolesPolicy(true, 60, Set.of("portal"));
+
+  private static AccessToken token(String issuer, String azp, Long iat) {
+    AccessToken token = new AccessToken();
+    token.issuer(issuer);
+    token.issuedFor(azp);
+    token.iat(iat);
+    return token;
+  }
+
+  @Test
+  void shouldTrustFreshTokenFromRealmAndClient() {
+    AccessToken token = token("http://localhost:8080/realms/test", "portal", NOW - 10);
+    assertThat(ENABLED.isTrusted(token, "test", NOW), is(true));
+  }
+
+  @Test
+  void shouldNotTrustTokenWhenDisabled() {
+    AccessToken token = token("http://localhost:8080/realms/test", "portal", NOW - 10);
+    TokenRolesPolicy disabled = new TokenRolesPolicy(false, 60, Set.of("portal"));
+    assertThat(disabled.isTrusted(token, "test", NOW), is(false));
+  }
+
+  @Test
+  void shouldNotTrustStaleToken() {
+    assertThat(
+        ENABLED.isTrusted(
+            token("http://localhost:8080/realms/test", "portal", NOW - 61), "test", NOW),
+        is(false));
+    assertThat(
+        ENABLED.isTrusted(
+            token("http://localhost:8080/realms/test", "portal", NOW + 61), "test", NOW),
+        is(false));
+    assertThat(
+        ENABLED.isTrusted(token("http://localhost:8080/realms/test", "portal", null), "test", NOW),
+        is(false));
+  }
+
+  @Test
+  void shouldNotTrustTokenFromForeignIssuer() {
+    assertThat(
+        ENABLED.isTrusted(
+            token("http://localhost:8080/realms/other", "portal", NOW - 10), "test", NOW),
+        is(false));
+    assertThat(
+        ENABLED.isTrusted(
+            token("http://localhost:8080/realms/other/test", "portal", NOW - 10), "test", NOW),
+        is(false));
+    assertThat(ENABLED.isTrusted(token(null, "portal", NOW - 10), "test", NOW), is(false));
+  }
+
+  @Test
+  void shouldNotTrustTokenIssuedForOtherClient() {
+    assertThat(
+        ENABLED.isTrusted(
+            token("http://localhost:8080/realms/test", "admin-cli", NOW - 10), "test", NOW),
+        is(false));
+    assertThat(
+        ENABLED.isTrusted(token("http://localhost:8080/realms/test", null, NOW - 10), "test", NOW),
+        is(false));
+    TokenRolesPolicy noClients = new TokenRolesPolicy(true, 60, Set.of());
+    assertThat(
+        noClients.isTrusted(
+            token("http://localhost:8080/realms/test", "portal", NOW - 10), "test", NOW),
+        is(false));
+  }
+}